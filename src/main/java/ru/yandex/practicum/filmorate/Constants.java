@@ -9,4 +9,12 @@ public class Constants {
     public static final DateTimeFormatter RELEASE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd");
     public static final Integer NOT_CONFIRMED_FRIENDSHIP = 1;
     public static final Integer CONFIRMED_FRIENDSHIP = 2;
+    public static final Integer DEFAULT_PAGE_SIZE = 100;
+    public static final Integer MAX_PAGE_SIZE = 1000;
+    public static final Integer MAX_BATCH_SIZE = 1000;
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    public static final String NDJSON_MEDIA_TYPE = "application/x-ndjson";
+    public static final String CSV_MEDIA_TYPE = "text/csv";
+    public static final Integer STREAM_FETCH_SIZE = 500;
+    public static final Integer EXPORT_FETCH_SIZE = 10000;
 }
\ No newline at end of file
@@ -0,0 +1,27 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.WebRequest;
+
+import java.util.function.Supplier;
+
+//ответ на условный GET: если If-None-Match совпадает с текущим ETag, отдается 304 без тела;
+//тег версии не говорит, существует ли сущность, поэтому тело читается (из кеша) до сравнения и для
+//несуществующего ID ответ остается 404; заголовок ETag ответа 304 выставляет сам checkNotModified
+final class ConditionalResponses {
+
+    private ConditionalResponses() {
+    }
+
+    //eTag вычисляется до чтения тела, поэтому изменение во время запроса дает клиенту устаревший тег,
+    //и следующий условный запрос получит новое тело, а не 304
+    static <T> ResponseEntity<T> withETag(WebRequest request, String eTag, Supplier<T> body) {
+        T value = body.get();
+        if (request.checkNotModified(eTag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).build();
+        }
+
+        return ResponseEntity.ok().eTag(eTag).body(value);
+    }
+}
@@ -0,0 +1,98 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerMapping;
+import ru.yandex.practicum.filmorate.service.EndpointMetrics;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Set;
+
+//фильтр замеряет полное время ответа контроллеров фильмов, пользователей, жанров и MPA; эндпоинт определяется
+//по шаблону пути сработавшего маппинга, поэтому /films/1 и /films/2 учитываются как GET /films/{id},
+//а статус берется уже после обработки исключений в ValidationExceptionHandler; для асинхронных ответов
+//(StreamingResponseBody) время и статус фиксируются по завершении запроса, когда тело ответа уже записано
+@Component
+public class EndpointMetricsFilter extends OncePerRequestFilter {
+    private static final Set<Class<?>> MEASURED_CONTROLLERS = Set.of(FilmController.class, UserController.class,
+            GenreController.class, MpaController.class);
+
+    private final EndpointMetrics endpointMetrics;
+
+    public EndpointMetricsFilter(EndpointMetrics endpointMetrics) {
+        this.endpointMetrics = endpointMetrics;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        long startedAt = System.nanoTime();
+        boolean failed = true;
+        try {
+            chain.doFilter(request, response);
+            failed = false;
+        } finally {
+            String endpoint = endpoint(request);
+            if (endpoint != null) {
+                if (!failed && request.isAsyncStarted()) {
+                    request.getAsyncContext().addListener(new CompletionListener(endpoint, startedAt));
+                } else {
+                    endpointMetrics.record(endpoint,
+                            failed ? HttpServletResponse.SC_INTERNAL_SERVER_ERROR : response.getStatus(),
+                            System.nanoTime() - startedAt);
+                }
+            }
+        }
+    }
+
+    private static String endpoint(HttpServletRequest request) {
+        Object handler = request.getAttribute(HandlerMapping.BEST_MATCHING_HANDLER_ATTRIBUTE);
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        if (handler instanceof HandlerMethod && pattern != null
+                && MEASURED_CONTROLLERS.contains(((HandlerMethod) handler).getBeanType())) {
+            return request.getMethod() + " " + pattern;
+        }
+        return null;
+    }
+
+    //onComplete вызывается после асинхронной диспетчеризации, в которой записывается тело и обрабатываются
+    //исключения, в том числе после onError и onTimeout
+    private final class CompletionListener implements AsyncListener {
+        private final String endpoint;
+        private final long startedAt;
+        private volatile boolean failed;
+
+        private CompletionListener(String endpoint, long startedAt) {
+            this.endpoint = endpoint;
+            this.startedAt = startedAt;
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            int status = ((HttpServletResponse) event.getSuppliedResponse()).getStatus();
+            endpointMetrics.record(endpoint, failed ? HttpServletResponse.SC_INTERNAL_SERVER_ERROR : status,
+                    System.nanoTime() - startedAt);
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            failed = true;
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            failed = true;
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+    }
+}
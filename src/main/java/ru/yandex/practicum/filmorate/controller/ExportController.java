@@ -0,0 +1,48 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.yandex.practicum.filmorate.Constants;
+import ru.yandex.practicum.filmorate.service.ExportService;
+
+import java.util.zip.GZIPOutputStream;
+
+//снимок отдается файлом: с gzip=true - сжатым, как application/gzip
+@Slf4j
+@RestController
+@RequestMapping("/export")
+@RequiredArgsConstructor
+public class ExportController {
+    private final ExportService exportService;
+
+    @GetMapping()
+    public ResponseEntity<StreamingResponseBody> exportSnapshot(@RequestParam(defaultValue = "false") boolean gzip) {
+        String fileName = "filmorate-export.ndjson" + (gzip ? ".gz" : "");
+        MediaType mediaType = MediaType.valueOf(gzip ? "application/gzip" : Constants.NDJSON_MEDIA_TYPE);
+
+        StreamingResponseBody body = outputStream -> {
+            if (gzip) {
+                try (GZIPOutputStream gzipStream = new GZIPOutputStream(outputStream, 1 << 16)) {
+                    exportService.exportSnapshot(gzipStream);
+                }
+            } else {
+                exportService.exportSnapshot(outputStream);
+            }
+        };
+
+        return ResponseEntity.ok()
+                .contentType(mediaType)
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        ContentDisposition.attachment().filename(fileName).build().toString())
+                .body(body);
+    }
+}
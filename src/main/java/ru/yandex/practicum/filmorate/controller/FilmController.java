@@ -1,13 +1,20 @@
 package ru.yandex.practicum.filmorate.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.yandex.practicum.filmorate.Constants;
+import ru.yandex.practicum.filmorate.model.BatchItemResult;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.service.FilmService;
 
 import javax.validation.Valid;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
 
 @Slf4j
@@ -16,15 +23,38 @@ import java.util.List;
 @RequiredArgsConstructor
 public class FilmController {
     private final FilmService filmService;
+    private final ObjectMapper objectMapper;
 
     @GetMapping()
-    public List<Film> getFilms() {
-        return filmService.getFilms();
+    public ResponseEntity<List<Film>> getFilms(@RequestParam(required = false) Integer after,
+                                               @RequestParam(required = false) Integer limit) {
+        if (after == null && limit == null) {
+            return ResponseEntity.ok(filmService.getFilms());
+        }
+
+        List<Film> films = filmService.getFilms(after, limit);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (!films.isEmpty() && films.size() == ((limit == null) ? Constants.DEFAULT_PAGE_SIZE : limit)) {
+            response.header(Constants.NEXT_CURSOR_HEADER, films.get(films.size() - 1).getId().toString());
+        }
+        return response.body(films);
+    }
+
+    @GetMapping(produces = Constants.NDJSON_MEDIA_TYPE)
+    public StreamingResponseBody streamFilms() {
+        return outputStream -> filmService.streamFilms(film -> {
+            try {
+                outputStream.write(objectMapper.writeValueAsBytes(film));
+                outputStream.write('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
     }
 
     @GetMapping("/{id}")
-    public Film getFilms(@PathVariable Integer id) {
-        return filmService.getFilm(id);
+    public ResponseEntity<Film> getFilms(@PathVariable Integer id, WebRequest request) {
+        return ConditionalResponses.withETag(request, filmService.getFilmTag(id), () -> filmService.getFilm(id));
     }
 
     @PostMapping()
@@ -32,6 +62,11 @@ public class FilmController {
         return filmService.addFilm(film);
     }
 
+    @PostMapping("/batch")
+    public List<BatchItemResult> addFilms(@RequestBody List<Film> films) {
+        return filmService.addFilms(films);
+    }
+
     @PutMapping()
     public Film updateFilm(@Valid @RequestBody Film film) {
         return filmService.updateFilm(film);
@@ -56,4 +91,10 @@ public class FilmController {
     public List<Film> getPopular(@RequestParam(defaultValue = "10", required = false) Integer count) {
         return filmService.getPopular(count);
     }
+
+    @GetMapping("/{id}/similar")
+    public List<Film> getSimilar(@PathVariable Integer id,
+                                 @RequestParam(defaultValue = "10", required = false) Integer limit) {
+        return filmService.getSimilar(id, limit);
+    }
 }
\ No newline at end of file
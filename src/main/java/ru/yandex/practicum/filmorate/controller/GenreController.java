@@ -2,10 +2,12 @@ package ru.yandex.practicum.filmorate.controller;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 import ru.yandex.practicum.filmorate.model.Genre;
 import ru.yandex.practicum.filmorate.service.GenreService;
 
@@ -19,12 +21,12 @@ public class GenreController {
     private final GenreService genreService;
 
     @GetMapping()
-    public List<Genre> getAllGenre() {
-        return genreService.getAllGenre();
+    public ResponseEntity<List<Genre>> getAllGenre(WebRequest request) {
+        return ConditionalResponses.withETag(request, genreService.getTag(), genreService::getAllGenre);
     }
 
     @GetMapping("/{id}")
-    public Genre getGenre(@PathVariable Integer id) {
-        return genreService.getGenre(id);
+    public ResponseEntity<Genre> getGenre(@PathVariable Integer id, WebRequest request) {
+        return ConditionalResponses.withETag(request, genreService.getTag(), () -> genreService.getGenre(id));
     }
 }
\ No newline at end of file
@@ -0,0 +1,39 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import ru.yandex.practicum.filmorate.Constants;
+import ru.yandex.practicum.filmorate.model.ImportReport;
+import ru.yandex.practicum.filmorate.service.ImportService;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+//тело запроса читается потоком, без загрузки целиком в память; entity - films, users, likes или friends
+@Slf4j
+@RestController
+@RequestMapping("/import")
+@RequiredArgsConstructor
+public class ImportController {
+    private final ImportService importService;
+
+    @PostMapping(value = "/{entity}", consumes = {Constants.NDJSON_MEDIA_TYPE, Constants.CSV_MEDIA_TYPE})
+    public ImportReport importData(@PathVariable String entity, @RequestParam(required = false) String jobId,
+                                   HttpServletRequest request) throws IOException {
+        boolean csv = MediaType.valueOf(request.getContentType())
+                .isCompatibleWith(MediaType.valueOf(Constants.CSV_MEDIA_TYPE));
+        InputStream input = "gzip".equalsIgnoreCase(request.getHeader(HttpHeaders.CONTENT_ENCODING))
+                ? new GZIPInputStream(request.getInputStream()) : request.getInputStream();
+
+        return importService.importData(entity, csv, jobId, input);
+    }
+}
@@ -0,0 +1,43 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import ru.yandex.practicum.filmorate.model.CacheStats;
+import ru.yandex.practicum.filmorate.model.EndpointStats;
+import ru.yandex.practicum.filmorate.model.IdFilterStats;
+import ru.yandex.practicum.filmorate.model.QueryStats;
+import ru.yandex.practicum.filmorate.service.MetricsService;
+
+import java.util.List;
+import java.util.Map;
+
+@Slf4j
+@RestController
+@RequestMapping("/metrics")
+@RequiredArgsConstructor
+public class MetricsController {
+    private final MetricsService metricsService;
+
+    @GetMapping("/caches")
+    public Map<String, CacheStats> getCacheStats() {
+        return metricsService.getCacheStats();
+    }
+
+    @GetMapping("/id-filters")
+    public Map<String, IdFilterStats> getIdFilterStats() {
+        return metricsService.getIdFilterStats();
+    }
+
+    @GetMapping("/queries")
+    public List<QueryStats> getQueryStats() {
+        return metricsService.getQueryStats();
+    }
+
+    @GetMapping("/endpoints")
+    public List<EndpointStats> getEndpointStats() {
+        return metricsService.getEndpointStats();
+    }
+}
@@ -2,10 +2,12 @@ package ru.yandex.practicum.filmorate.controller;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 import ru.yandex.practicum.filmorate.model.Mpa;
 import ru.yandex.practicum.filmorate.service.MpaService;
 
@@ -19,12 +21,12 @@ public class MpaController {
     private final MpaService mpaService;
 
     @GetMapping()
-    public List<Mpa> getAllMpa() {
-        return mpaService.getAllMpa();
+    public ResponseEntity<List<Mpa>> getAllMpa(WebRequest request) {
+        return ConditionalResponses.withETag(request, mpaService.getTag(), mpaService::getAllMpa);
     }
 
     @GetMapping("/{id}")
-    public Mpa getMpa(@PathVariable Integer id) {
-        return mpaService.getMpa(id);
+    public ResponseEntity<Mpa> getMpa(@PathVariable Integer id, WebRequest request) {
+        return ConditionalResponses.withETag(request, mpaService.getTag(), () -> mpaService.getMpa(id));
     }
 }
\ No newline at end of file
@@ -1,13 +1,22 @@
 package ru.yandex.practicum.filmorate.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.yandex.practicum.filmorate.Constants;
+import ru.yandex.practicum.filmorate.model.BatchItemResult;
+import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.FilmService;
 import ru.yandex.practicum.filmorate.service.UserService;
 
 import javax.validation.Valid;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -19,15 +28,39 @@ import java.util.Map;
 public class UserController {
     private final Map<Integer, User> users = new HashMap<>();
     private final UserService userService;
+    private final FilmService filmService;
+    private final ObjectMapper objectMapper;
 
     @GetMapping()
-    public List<User> getAllUsers() {
-        return userService.getAllUsers();
+    public ResponseEntity<List<User>> getAllUsers(@RequestParam(required = false) Integer after,
+                                                  @RequestParam(required = false) Integer limit) {
+        if (after == null && limit == null) {
+            return ResponseEntity.ok(userService.getAllUsers());
+        }
+
+        List<User> users = userService.getUsers(after, limit);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (!users.isEmpty() && users.size() == ((limit == null) ? Constants.DEFAULT_PAGE_SIZE : limit)) {
+            response.header(Constants.NEXT_CURSOR_HEADER, users.get(users.size() - 1).getId().toString());
+        }
+        return response.body(users);
+    }
+
+    @GetMapping(produces = Constants.NDJSON_MEDIA_TYPE)
+    public StreamingResponseBody streamUsers() {
+        return outputStream -> userService.streamUsers(user -> {
+            try {
+                outputStream.write(objectMapper.writeValueAsBytes(user));
+                outputStream.write('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
     }
 
     @GetMapping("/{id}")
-    public User getUserById(@PathVariable Integer id) {
-        return userService.getUserById(id);
+    public ResponseEntity<User> getUserById(@PathVariable Integer id, WebRequest request) {
+        return ConditionalResponses.withETag(request, userService.getUserTag(id), () -> userService.getUserById(id));
     }
 
     @PostMapping()
@@ -35,6 +68,11 @@ public class UserController {
         return userService.createUser(user);
     }
 
+    @PostMapping("/batch")
+    public List<BatchItemResult> addUsers(@RequestBody List<User> users) {
+        return userService.addUsers(users);
+    }
+
     @PutMapping()
     public User updateUser(@RequestBody User user) {
         return userService.updateUser(user);
@@ -55,6 +93,18 @@ public class UserController {
         return userService.getCommonFriends(id, otherId);
     }
 
+    @GetMapping("/{id}/suggestions")
+    public List<User> getSuggestions(@PathVariable Integer id,
+                                     @RequestParam(defaultValue = "10", required = false) Integer limit) {
+        return userService.getSuggestions(id, limit);
+    }
+
+    @GetMapping("/{id}/recommendations")
+    public List<Film> getRecommendations(@PathVariable Integer id,
+                                         @RequestParam(defaultValue = "10", required = false) Integer limit) {
+        return filmService.getRecommendations(id, limit);
+    }
+
     @PutMapping("/{id}/friends/{otherId}")
     public ResponseEntity addFriend(@PathVariable Integer id, @PathVariable Integer otherId) {
         return ResponseEntity.ok(userService.addFriend(id, otherId));
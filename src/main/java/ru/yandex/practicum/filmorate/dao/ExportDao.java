@@ -0,0 +1,11 @@
+package ru.yandex.practicum.filmorate.dao;
+
+public interface ExportDao {
+    void streamSnapshot(RowHandler handler);
+
+    //values переиспользуется для следующей строки, поэтому обрабатывать его нужно сразу
+    @FunctionalInterface
+    interface RowHandler {
+        void row(String type, String[] columns, Object[] values);
+    }
+}
@@ -8,4 +8,6 @@ public interface GenreDao {
     List<Genre> getAllGenre();
 
     Genre getGenre(Integer id);
+
+    void refresh();
 }
\ No newline at end of file
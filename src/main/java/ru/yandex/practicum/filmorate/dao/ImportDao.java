@@ -0,0 +1,15 @@
+package ru.yandex.practicum.filmorate.dao;
+
+import java.util.List;
+
+public interface ImportDao {
+    Long getCheckpoint(String jobId, String entity);
+
+    void saveCheckpoint(String jobId, String entity, long rowsDone);
+
+    int importLikes(List<int[]> likes);
+
+    int importFriends(List<int[]> friends);
+
+    int confirmMutualFriends();
+}
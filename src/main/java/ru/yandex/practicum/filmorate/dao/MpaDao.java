@@ -8,4 +8,6 @@ public interface MpaDao {
     List<Mpa> getAllMpa();
 
     Mpa getMpa(Integer id);
+
+    void refresh();
 }
\ No newline at end of file
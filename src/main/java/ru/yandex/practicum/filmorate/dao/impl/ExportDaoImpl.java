@@ -0,0 +1,71 @@
+package ru.yandex.practicum.filmorate.dao.impl;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.Constants;
+import ru.yandex.practicum.filmorate.dao.ExportDao;
+
+import java.sql.Date;
+import java.util.List;
+
+//таблицы выгружаются по порядку первичных ключей курсорами только для чтения и только вперед,
+//справочники - раньше ссылающихся на них таблиц, чтобы выгрузку можно было загружать в том же порядке;
+//согласованность всех таблиц между собой обеспечивает транзакция вызывающего кода
+@Slf4j
+@Component
+public class ExportDaoImpl implements ExportDao {
+    private static final List<Table> TABLES = List.of(
+            new Table("mpa", "SELECT mpa_id, mpa_name FROM mpa ORDER BY mpa_id",
+                    "id", "name"),
+            new Table("genre", "SELECT genre_id, genre_name FROM genres ORDER BY genre_id",
+                    "id", "name"),
+            new Table("film", "SELECT film_id, film_name, description, release, duration, mpa_id " +
+                    "FROM films ORDER BY film_id",
+                    "id", "name", "description", "releaseDate", "duration", "mpaId"),
+            new Table("filmGenre", "SELECT film_id, genre_id FROM film_genres ORDER BY film_id, genre_id",
+                    "filmId", "genreId"),
+            new Table("user", "SELECT user_id, email, login, user_name, birthday FROM users ORDER BY user_id",
+                    "id", "email", "login", "name", "birthday"),
+            new Table("like", "SELECT film_id, user_id FROM likes ORDER BY film_id, user_id",
+                    "filmId", "userId"),
+            new Table("friend", "SELECT user_id, friend_id, status_id FROM friends ORDER BY user_id, friend_id",
+                    "userId", "friendId", "status"));
+
+    public final JdbcTemplate jdbcTemplate;
+
+    public ExportDaoImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public void streamSnapshot(RowHandler handler) {
+        for (Table table : TABLES) {
+            Object[] values = new Object[table.columns.length];
+            long[] rows = new long[1];
+
+            jdbcTemplate.query(table.sql, stmt -> stmt.setFetchSize(Constants.EXPORT_FETCH_SIZE), rs -> {
+                for (int i = 0; i < values.length; i++) {
+                    Object value = rs.getObject(i + 1);
+                    values[i] = (value instanceof Date) ? ((Date) value).toLocalDate() : value;
+                }
+                handler.row(table.type, table.columns, values);
+                rows[0]++;
+            });
+
+            log.debug("Выгружено записей " + table.type + ": " + rows[0]);
+        }
+    }
+
+    private static final class Table {
+        private final String type;
+        private final String sql;
+        private final String[] columns;
+
+        private Table(String type, String sql, String... columns) {
+            this.type = type;
+            this.sql = sql;
+            this.columns = columns;
+        }
+    }
+}
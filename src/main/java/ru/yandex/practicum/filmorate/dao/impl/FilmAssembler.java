@@ -0,0 +1,163 @@
+package ru.yandex.practicum.filmorate.dao.impl;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.dao.GenreDao;
+import ru.yandex.practicum.filmorate.dao.MpaDao;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.IdSet;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.storage.film.FilmLikeCounters;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.function.Consumer;
+
+//класс FilmAssembler собирает фильмы из трех индексных запросов (фильмы, жанры, лайки)
+//и связывает их по ID фильма через отсортированный массив, без строковой агрегации;
+//жанры и MPA берутся из справочников в памяти
+@Component
+public class FilmAssembler {
+    private static final int MAX_IN_PARAMS = 1000;
+    private static final String FILMS_SQL = "SELECT  f.film_id,\n" +
+            "       f.film_name,\n" +
+            "       f.description,\n" +
+            "       f.release,\n" +
+            "       f.duration,\n" +
+            "       f.mpa_id\n" +
+            "FROM films AS f\n";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final GenreDao genreDao;
+    private final MpaDao mpaDao;
+    private final LikeWriteBuffer likeBuffer;
+    private final FilmLikeCounters likeCounters;
+
+    public FilmAssembler(JdbcTemplate jdbcTemplate, GenreDao genreDao, MpaDao mpaDao, LikeWriteBuffer likeBuffer,
+                         FilmLikeCounters likeCounters) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.genreDao = genreDao;
+        this.mpaDao = mpaDao;
+        this.likeBuffer = likeBuffer;
+        this.likeCounters = likeCounters;
+    }
+
+    //condition - окончание запроса к таблице films с псевдонимом f (WHERE / ORDER BY / LIMIT),
+    //порядок фильмов в результате совпадает с порядком строк запроса
+    public List<Film> findFilms(String condition, Object... args) {
+        List<Film> films = jdbcTemplate.query(FILMS_SQL + condition, (rs, rowNum) -> makeFilm(rs), args);
+        fillGenresAndLikes(films);
+        return films;
+    }
+
+    //все фильмы по возрастанию ID одним курсором только вперед с fetchSize строк за обращение; жанры и лайки
+    //дочитываются на каждые fetchSize фильмов, поэтому в памяти держится только одна пачка
+    public void streamFilms(int fetchSize, Consumer<Film> consumer) {
+        List<Film> batch = new ArrayList<>(fetchSize);
+        jdbcTemplate.query(FILMS_SQL + "ORDER BY f.film_id ASC", stmt -> stmt.setFetchSize(fetchSize), rs -> {
+            batch.add(makeFilm(rs));
+            if (batch.size() == fetchSize) {
+                emit(batch, consumer);
+            }
+        });
+        emit(batch, consumer);
+    }
+
+    //фильмы возвращаются в порядке переданных ID, несуществующие ID пропускаются
+    public List<Film> findFilmsByIds(List<Integer> ids) {
+        List<Film> films = new ArrayList<>(ids.size());
+        for (int from = 0; from < ids.size(); from += MAX_IN_PARAMS) {
+            List<Integer> chunk = ids.subList(from, Math.min(from + MAX_IN_PARAMS, ids.size()));
+            films.addAll(jdbcTemplate.query(FILMS_SQL + "WHERE f.film_id IN (" + placeholders(chunk.size()) + ")",
+                    (rs, rowNum) -> makeFilm(rs), chunk.toArray()));
+        }
+        fillGenresAndLikes(films);
+
+        Film[] byId = sortById(films);
+        int[] sortedIds = Arrays.stream(byId).mapToInt(Film::getId).toArray();
+        List<Film> ordered = new ArrayList<>(byId.length);
+        for (Integer id : ids) {
+            int position = Arrays.binarySearch(sortedIds, id);
+            if (position >= 0) {
+                ordered.add(byId[position]);
+            }
+        }
+        return ordered;
+    }
+
+    private void emit(List<Film> batch, Consumer<Film> consumer) {
+        fillGenresAndLikes(batch);
+        batch.forEach(consumer);
+        batch.clear();
+    }
+
+    private void fillGenresAndLikes(List<Film> films) {
+        if (films.isEmpty()) {
+            return;
+        }
+
+        Film[] byId = sortById(films);
+        int[] sortedIds = Arrays.stream(byId).mapToInt(Film::getId).toArray();
+        IdSet[] likes = new IdSet[byId.length];
+        for (int i = 0; i < byId.length; i++) {
+            likes[i] = new IdSet();
+            byId[i].setLikes(likes[i]);
+            byId[i].setLikesAmount(likeCounters.get(sortedIds[i]));
+        }
+
+        for (int from = 0; from < sortedIds.length; from += MAX_IN_PARAMS) {
+            int to = Math.min(from + MAX_IN_PARAMS, sortedIds.length);
+            Object[] args = Arrays.stream(sortedIds, from, to).boxed().toArray();
+            String inList = placeholders(to - from);
+
+            jdbcTemplate.query("SELECT film_id, genre_id\n" +
+                    "FROM film_genres\n" +
+                    "WHERE film_id IN (" + inList + ")\n" +
+                    "ORDER BY film_id ASC, genre_id ASC", rs -> {
+                Film film = byId[Arrays.binarySearch(sortedIds, rs.getInt("film_id"))];
+                film.getGenres().add(genreDao.getGenre(rs.getInt("genre_id")));
+            }, args);
+
+            jdbcTemplate.query("SELECT film_id, user_id\n" +
+                    "FROM likes\n" +
+                    "WHERE film_id IN (" + inList + ")\n" +
+                    "ORDER BY film_id ASC, user_id ASC", rs -> {
+                likes[Arrays.binarySearch(sortedIds, rs.getInt("film_id"))].addInt(rs.getInt("user_id"));
+            }, args);
+        }
+
+        if (likeBuffer.isEnabled()) {
+            for (int i = 0; i < byId.length; i++) {
+                likeBuffer.applyPending(sortedIds[i], likes[i]);
+            }
+        }
+    }
+
+    private Film makeFilm(ResultSet rs) throws SQLException {
+        Integer id = rs.getInt("film_id");
+        String name = rs.getString("film_name");
+        String description = rs.getString("description");
+        LocalDate releaseDate = rs.getDate("release").toLocalDate();
+        Integer duration = rs.getInt("duration");
+        Mpa mpa = mpaDao.getMpa(rs.getInt("mpa_id"));
+
+        return new Film(id, name, description, releaseDate, duration, mpa, new LinkedHashSet<>(), null, null);
+    }
+
+    private static Film[] sortById(List<Film> films) {
+        Film[] byId = films.toArray(new Film[0]);
+        Arrays.sort(byId, Comparator.comparingInt(Film::getId));
+        return byId;
+    }
+
+    private static String placeholders(int count) {
+        return String.join(", ", Collections.nCopies(count, "?"));
+    }
+}
@@ -1,101 +1,215 @@
 package ru.yandex.practicum.filmorate.dao.impl;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.http.HttpStatus;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCallback;
+import org.springframework.jdbc.core.PreparedStatementCreatorFactory;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import ru.yandex.practicum.filmorate.Constants;
 import ru.yandex.practicum.filmorate.exception.AlreadyExistsException;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.model.BatchItemResult;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.Genre;
-import ru.yandex.practicum.filmorate.model.Mpa;
 import ru.yandex.practicum.filmorate.service.ResponseDefault;
+import ru.yandex.practicum.filmorate.storage.AfterCommit;
+import ru.yandex.practicum.filmorate.storage.EntityVersions;
+import ru.yandex.practicum.filmorate.storage.IdBloomFilter;
+import ru.yandex.practicum.filmorate.storage.IdFilterRegistry;
+import ru.yandex.practicum.filmorate.storage.SnapshotTransaction;
+import ru.yandex.practicum.filmorate.storage.film.FilmLeaderboard;
+import ru.yandex.practicum.filmorate.storage.film.FilmLikeCounters;
 import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.film.LikesMatrix;
+import ru.yandex.practicum.filmorate.storage.film.RecommendationCache;
+import ru.yandex.practicum.filmorate.storage.user.UserStorage;
 
+import javax.annotation.PostConstruct;
 import java.sql.Date;
-import java.sql.PreparedStatement;
 import java.sql.ResultSet;
-import java.sql.SQLException;
-import java.time.LocalDate;
+import java.sql.Types;
 import java.util.*;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 @Slf4j
 @Component
 public class FilmDbStorage implements FilmStorage {
 
-    public final JdbcTemplate jdbcTemplate;
+    private static final int MAX_IN_PARAMS = 1000;
 
-    public FilmDbStorage(JdbcTemplate jdbcTemplate) {
+    public final JdbcTemplate jdbcTemplate;
+    private final FilmAssembler assembler;
+    private final FilmLeaderboard leaderboard;
+    private final FilmLikeCounters likeCounters;
+    private final LikesMatrix likesMatrix;
+    private final RecommendationCache recommendationCache;
+    private final LikeWriteBuffer likeBuffer;
+    private final EntityVersions versions;
+    private final UserStorage userStorage;
+    private final IdBloomFilter filmIds;
+    private final SnapshotTransaction snapshotTransaction;
+
+    public FilmDbStorage(JdbcTemplate jdbcTemplate, FilmAssembler assembler, FilmLeaderboard leaderboard,
+                         FilmLikeCounters likeCounters, LikesMatrix likesMatrix,
+                         RecommendationCache recommendationCache, LikeWriteBuffer likeBuffer,
+                         EntityVersions versions, UserStorage userStorage, IdFilterRegistry idFilters,
+                         SnapshotTransaction snapshotTransaction) {
         this.jdbcTemplate = jdbcTemplate;
+        this.assembler = assembler;
+        this.leaderboard = leaderboard;
+        this.likeCounters = likeCounters;
+        this.likesMatrix = likesMatrix;
+        this.recommendationCache = recommendationCache;
+        this.likeBuffer = likeBuffer;
+        this.versions = versions;
+        this.userStorage = userStorage;
+        this.snapshotTransaction = snapshotTransaction;
+        likeBuffer.setFailedWriteListener((filmId, userId, liked) -> likeChanged(filmId, userId, !liked));
+        this.filmIds = idFilters.register("films", ids -> jdbcTemplate.query("SELECT film_id FROM films",
+                rs -> {
+                    ids.accept(rs.getInt("film_id"));
+                }));
+    }
+
+    @PostConstruct
+    public void loadIdFilter() {
+        filmIds.rebuild();
+    }
+
+    //likes_count записывают только сверка и сброс буфера отложенной записи, поэтому после остановки между лайком
+    //и сверкой он отстает от LIKES; рейтинг загружается по таблице LIKES, а отставшие фильмы получает сверка
+    @PostConstruct
+    public void loadLeaderboard() {
+        String sql = "SELECT f.film_id, f.likes_count, COUNT(l.user_id) AS likes FROM films AS f " +
+                "LEFT JOIN likes AS l ON l.film_id = f.film_id GROUP BY f.film_id, f.likes_count";
+
+        Map<Integer, Integer> likesCount = new HashMap<>();
+        List<Integer> staleFilmIds = new ArrayList<>();
+        jdbcTemplate.query(sql, rs -> {
+            int filmId = rs.getInt("film_id");
+            int likes = rs.getInt("likes");
+            likesCount.put(filmId, likes);
+            if (likes != rs.getInt("likes_count")) {
+                staleFilmIds.add(filmId);
+            }
+        });
+
+        leaderboard.load(likesCount);
+        staleFilmIds.forEach(likeCounters::markUnreconciled);
+        log.info("Рейтинг популярных фильмов загружен, фильмов: " + likesCount.size()
+                + ", likes_count отстает у фильмов: " + staleFilmIds.size());
+    }
+
+    @PostConstruct
+    public void loadLikesMatrix() {
+        int[][] likes = {new int[1024], new int[1024]};
+        int[] size = new int[1];
+        jdbcTemplate.query("SELECT film_id, user_id FROM likes ORDER BY film_id ASC, user_id ASC", rs -> {
+            if (size[0] == likes[0].length) {
+                likes[0] = Arrays.copyOf(likes[0], size[0] * 2);
+                likes[1] = Arrays.copyOf(likes[1], size[0] * 2);
+            }
+            likes[0][size[0]] = rs.getInt("film_id");
+            likes[1][size[0]] = rs.getInt("user_id");
+            size[0]++;
+        });
+
+        likesMatrix.load(likes[0], likes[1], size[0]);
+        log.info("Матрица лайков для похожих фильмов загружена, лайков: " + size[0]);
+    }
+
+    //лайк меняет только LIKES и счетчики в памяти, по которым строится рейтинг; здесь для фильмов, лайки которых
+    //изменились с прошлой сверки, likes_count пересчитывается по таблице LIKES, а счетчики приводятся к ней
+    //с учетом еще не записанных лайков буфера отложенной записи; исправленный фильм получает новую версию,
+    //чтобы кеш и ETag не отдавали прежний likesAmount
+    @Scheduled(fixedDelayString = "${filmorate.likes.reconcile-interval-ms:60000}",
+            initialDelayString = "${filmorate.likes.reconcile-interval-ms:60000}")
+    public void reconcileLikesCount() {
+        List<Integer> filmIds = likeCounters.drainUnreconciled();
+        if (filmIds.isEmpty()) {
+            return;
+        }
+
+        if (likeBuffer.isEnabled()) {
+            likeBuffer.flush();
+        }
+
+        int corrected = 0;
+        for (int from = 0; from < filmIds.size(); from += MAX_IN_PARAMS) {
+            List<Integer> chunk = filmIds.subList(from, Math.min(from + MAX_IN_PARAMS, filmIds.size()));
+            String inList = String.join(", ", Collections.nCopies(chunk.size(), "?"));
+
+            List<Map<String, Object>> rows = jdbcTemplate.queryForList("SELECT film_id, likes_count FROM FINAL TABLE " +
+                    "(UPDATE films AS f SET likes_count = (SELECT COUNT(*) FROM likes AS l WHERE l.film_id = f.film_id) " +
+                    "WHERE f.film_id IN (" + inList + "))", chunk.toArray());
+
+            for (Map<String, Object> row : rows) {
+                int filmId = ((Number) row.get("FILM_ID")).intValue();
+                int likes = ((Number) row.get("LIKES_COUNT")).intValue();
+                if (likeBuffer.isEnabled()) {
+                    likes += likeBuffer.pendingDelta(filmId);
+                }
+                if (likeCounters.reconcile(filmId, likes)) {
+                    versions.filmChanged(filmId);
+                    corrected++;
+                }
+            }
+        }
+
+        log.info("Счетчики лайков сверены с таблицей LIKES, фильмов: " + filmIds.size()
+                + ", исправлено: " + corrected);
+    }
+
+    //лайки, записанные в таблицу в обход хранилища (импорт), попадают в рейтинг и матрицу только после перезагрузки
+    @Override
+    public void reloadLikes() {
+        if (likeBuffer.isEnabled()) {
+            likeBuffer.flush();
+        }
+
+        loadLeaderboard();
+        loadLikesMatrix();
+        recommendationCache.clear();
+        versions.allFilmsChanged();
     }
 
     @Override
-    public Map<Integer, Film> getFilms() {
-        String sql = "SELECT  f.film_id,\n" +
-                "       f.film_name,\n" +
-                "       f.description,\n" +
-                "       f.release,\n" +
-                "       f.duration,\n" +
-                "       mpa.mpa_id,\n" +
-                "       mpa.mpa_name,\n" +
-                "       fgj.genre_ids,\n" +
-                "       fgj.genre_names,\n" +
-                "       l.likes\n" +
-                "FROM films AS f\n" +
-                "LEFT OUTER JOIN mpa AS mpa ON f.mpa_id = mpa.mpa_id\n" +
-                "LEFT OUTER JOIN (SELECT fg.film_id, \n" +
-                "               STRING_AGG (fg.genre_id, ', ') AS genre_ids,\n" +
-                "               STRING_AGG (g.genre_name, ', ') AS genre_names\n" +
-                "               FROM film_genres AS fg\n" +
-                "               LEFT OUTER JOIN genres AS g ON fg.genre_id = g.genre_id\n" +
-                "               GROUP BY fg.film_id) AS fgj ON f.film_id = fgj.film_id\n" +
-                "LEFT OUTER JOIN (SELECT film_id,\n" +
-                "               STRING_AGG (user_id, ', ') AS likes\n" +
-                "               FROM likes\n" +
-                "               GROUP BY film_id) AS l ON f.film_id = l.film_id\n" +
-                "ORDER BY f.film_id ASC;";
-
-        List<Film> filmsList = jdbcTemplate.query(sql, (rs, rowNum) -> makeFilm(rs));
-
-        return filmsList.stream().collect(Collectors.toMap(Film::getId, film -> film));
+    public List<Film> getFilms(Integer after, Integer limit) {
+        return assembler.findFilms("WHERE f.film_id > ?\nORDER BY f.film_id ASC\nLIMIT ?", after, limit);
+    }
+
+    //курсор по фильмам и запросы жанров и лайков его пачек читают один снимок базы в одном соединении
+    @Override
+    public void streamFilms(Consumer<Film> consumer) {
+        snapshotTransaction.run(() -> assembler.streamFilms(Constants.STREAM_FETCH_SIZE, consumer));
     }
 
     @Override
     public Film getFilm(Integer id) {
-        checkFilmExists(id);
+        if (!filmIds.mightContain(id)) {
+            throw new NotFoundException("Фильм с ID: " + id + " не существует");
+        }
+
+        List<Film> films = assembler.findFilms("WHERE f.film_id = ?", id);
 
-        String sql = "SELECT  f.film_id,\n" +
-                "       f.film_name,\n" +
-                "       f.description,\n" +
-                "       f.release,\n" +
-                "       f.duration,\n" +
-                "       mpa.mpa_id,\n" +
-                "       mpa.mpa_name,\n" +
-                "       fgj.genre_ids,\n" +
-                "       fgj.genre_names,\n" +
-                "       l.likes\n" +
-                "FROM films AS f\n" +
-                "LEFT OUTER JOIN mpa AS mpa ON f.mpa_id = mpa.mpa_id\n" +
-                "LEFT OUTER JOIN (SELECT fg.film_id, \n" +
-                "               STRING_AGG (fg.genre_id, ', ') AS genre_ids,\n" +
-                "               STRING_AGG (g.genre_name, ', ') AS genre_names\n" +
-                "               FROM film_genres AS fg\n" +
-                "               LEFT OUTER JOIN genres AS g ON fg.genre_id = g.genre_id\n" +
-                "               GROUP BY fg.film_id) AS fgj ON f.film_id = fgj.film_id\n" +
-                "LEFT OUTER JOIN (SELECT film_id,\n" +
-                "               STRING_AGG (user_id, ', ') AS likes\n" +
-                "               FROM likes\n" +
-                "               GROUP BY film_id) AS l ON f.film_id = l.film_id\n" +
-                "WHERE f.film_id = ?;";
-
-        return jdbcTemplate.queryForObject(sql, (rs, rowNum) -> makeFilm(rs), id);
+        if (films.isEmpty()) {
+            filmIds.recordFalsePositive();
+            throw new NotFoundException("Фильм с ID: " + id + " не существует");
+        }
+
+        return films.get(0);
     }
 
     @Override
+    @Transactional
     public Integer putFilm(Film film) {
         checkFilmName(film.getId(), film.getName());
 
@@ -103,22 +217,21 @@ public class FilmDbStorage implements FilmStorage {
             String sqlQuery = "INSERT INTO films(film_name, description, release, duration, mpa_id) " +
                     "VALUES (?, ?, ?, ?, ?)";
 
+            PreparedStatementCreatorFactory factory = new PreparedStatementCreatorFactory(sqlQuery,
+                    Types.VARCHAR, Types.VARCHAR, Types.DATE, Types.INTEGER, Types.INTEGER);
+            factory.setGeneratedKeysColumnNames("film_id");
             KeyHolder keyHolder = new GeneratedKeyHolder();
 
-            jdbcTemplate.update(connection -> {
-                PreparedStatement stmt = connection.prepareStatement(sqlQuery, new String[]{"film_id"});
-                stmt.setString(1, film.getName());
-                stmt.setString(2, film.getDescription());
-                stmt.setDate(3, Date.valueOf(film.getReleaseDate()));
-                stmt.setInt(4, film.getDuration());
-                stmt.setInt(5, (film.getMpa() == null) ? 0 : film.getMpa().getId());
-                return stmt;
-            }, keyHolder);
+            jdbcTemplate.update(factory.newPreparedStatementCreator(new Object[]{film.getName(),
+                    film.getDescription(), Date.valueOf(film.getReleaseDate()), film.getDuration(),
+                    (film.getMpa() == null) ? 0 : film.getMpa().getId()}), keyHolder);
 
             Integer id = keyHolder.getKey().intValue();
 
             film.setId(id);
-            updateGenre(film);
+            updateGenre(film, true);
+            AfterCommit.run(() -> leaderboard.addFilm(id));
+            filmIds.add(id);
 
             return id;
         } else {
@@ -135,129 +248,255 @@ public class FilmDbStorage implements FilmStorage {
                     (film.getMpa() == null) ? 1 : film.getMpa().getId(),
                     film.getId());
 
-            updateGenre(film);
+            updateGenre(film, false);
+            versions.filmChanged(film.getId());
 
             return film.getId();
         }
     }
 
+    //films - фильмы по индексам в пакетном запросе; названия проверяются одним IN-запросом, фильмы вставляются
+    //одним пакетом с получением сгенерированных ID, жанры всех фильмов - вторым пакетом
+    @Override
+    @Transactional
+    public List<BatchItemResult> addFilms(Map<Integer, Film> films) {
+        List<String> names = films.values().stream().map(Film::getName).collect(Collectors.toList());
+        Set<String> taken = new HashSet<>();
+        for (int from = 0; from < names.size(); from += MAX_IN_PARAMS) {
+            List<String> chunk = names.subList(from, Math.min(from + MAX_IN_PARAMS, names.size()));
+            taken.addAll(jdbcTemplate.queryForList("SELECT film_name FROM films WHERE film_name IN ("
+                    + String.join(", ", Collections.nCopies(chunk.size(), "?")) + ")", String.class, chunk.toArray()));
+        }
+
+        Set<Integer> mpaIds = new HashSet<>(jdbcTemplate.queryForList("SELECT mpa_id FROM mpa", Integer.class));
+        Set<Integer> genreIds = new HashSet<>(jdbcTemplate.queryForList("SELECT genre_id FROM genres",
+                Integer.class));
+
+        List<BatchItemResult> results = new ArrayList<>(films.size());
+        List<Film> inserted = new ArrayList<>(films.size());
+        List<Integer> insertedIndexes = new ArrayList<>(films.size());
+        films.forEach((index, film) -> {
+            Integer unknownGenre = (film.getGenres() == null) ? null : film.getGenres().stream()
+                    .map(Genre::getId)
+                    .filter(genreId -> !genreIds.contains(genreId))
+                    .findFirst()
+                    .orElse(null);
+
+            if (film.getMpa() != null && !mpaIds.contains(film.getMpa().getId())) {
+                results.add(BatchItemResult.failed(index, HttpStatus.NOT_FOUND,
+                        "MPA с ID: " + film.getMpa().getId() + " не существует"));
+            } else if (unknownGenre != null) {
+                results.add(BatchItemResult.failed(index, HttpStatus.NOT_FOUND,
+                        "Жанр с ID: " + unknownGenre + " не существует"));
+            } else if (taken.contains(film.getName())) {
+                results.add(BatchItemResult.failed(index, HttpStatus.CONFLICT,
+                        "Фильм " + film.getName() + " уже существует"));
+            } else {
+                inserted.add(film);
+                insertedIndexes.add(index);
+            }
+        });
+
+        if (inserted.isEmpty()) {
+            return results;
+        }
+
+        String sqlQuery = "INSERT INTO films(film_name, description, release, duration, mpa_id) " +
+                "VALUES (?, ?, ?, ?, ?)";
+
+        PreparedStatementCreatorFactory factory = new PreparedStatementCreatorFactory(sqlQuery);
+        factory.setGeneratedKeysColumnNames("film_id");
+
+        int[] ids = jdbcTemplate.execute(factory.newPreparedStatementCreator(List.of()),
+                (PreparedStatementCallback<int[]>) stmt -> {
+                    for (Film film : inserted) {
+                        stmt.setString(1, film.getName());
+                        stmt.setString(2, film.getDescription());
+                        stmt.setDate(3, Date.valueOf(film.getReleaseDate()));
+                        stmt.setInt(4, film.getDuration());
+                        stmt.setInt(5, (film.getMpa() == null) ? 0 : film.getMpa().getId());
+                        stmt.addBatch();
+                    }
+                    stmt.executeBatch();
+
+                    int[] keys = new int[inserted.size()];
+                    try (ResultSet rs = stmt.getGeneratedKeys()) {
+                        for (int i = 0; rs.next(); i++) {
+                            keys[i] = rs.getInt(1);
+                        }
+                    }
+                    return keys;
+                });
+
+        List<Object[]> genres = new ArrayList<>();
+        for (int i = 0; i < inserted.size(); i++) {
+            int id = ids[i];
+            Film film = inserted.get(i);
+            film.setId(id);
+            if (film.getGenres() != null) {
+                new TreeSet<>(film.getGenres().stream().map(Genre::getId).collect(Collectors.toSet()))
+                        .forEach(genreId -> genres.add(new Object[]{film.getId(), genreId}));
+            }
+            AfterCommit.run(() -> leaderboard.addFilm(id));
+            filmIds.add(id);
+            results.add(BatchItemResult.created(insertedIndexes.get(i), id));
+        }
+
+        if (!genres.isEmpty()) {
+            jdbcTemplate.batchUpdate("INSERT INTO film_genres (film_id, genre_id) VALUES (?, ?)", genres);
+        }
+
+        results.sort(Comparator.comparingInt(BatchItemResult::getIndex));
+        return results;
+    }
+
     @Override
     public boolean deleteFilm(Integer id) {
         checkFilmExists(id);
         String sqlQuery = "DELETE FROM films WHERE film_id = ?";
-        return jdbcTemplate.update(sqlQuery, id) > 0;
+        boolean deleted = jdbcTemplate.update(sqlQuery, id) > 0;
+        if (deleted) {
+            leaderboard.removeFilm(id);
+            likesMatrix.removeFilm(id);
+            versions.filmChanged(id);
+            filmIds.remove(id);
+        }
+        return deleted;
     }
 
+    //название фильма нужно только в сообщениях об ошибках, поэтому принятый лайк - это один INSERT;
+    //строка фильма не блокируется, а likes_count пересчитает сверка
     @Override
+    @Transactional
     public ResponseDefault addLike(Integer filmId, Integer userId) {
-        checkFilmExists(filmId);
-        checkUserExists(userId);
+        if (likeBuffer.isEnabled()) {
+            return addLikeWriteBehind(filmId, userId);
+        }
 
-        if (jdbcTemplate.queryForRowSet("SELECT film_id FROM likes WHERE film_id = ? AND user_id = ?",
-                filmId, userId).next()) {
+        try {
+            jdbcTemplate.update("INSERT INTO likes (film_id, user_id, last_update) VALUES (?, ?, CURRENT_TIMESTAMP)",
+                    filmId, userId);
+        } catch (DuplicateKeyException e) {
             throw new AlreadyExistsException("Пользователь с ID: " + userId + " уже поставил like фильму "
-                    + getFilm(filmId).getName() + " с ID: " + filmId);
-        } else if (jdbcTemplate.update("INSERT INTO likes (film_id, user_id, last_update) " +
-                "VALUES (?, ?, CURRENT_TIMESTAMP)", filmId, userId) > 0) {
-            String message = "Пользователь с ID: " + userId + " поставил like фильму "
-                    + getFilm(filmId).getName() + " с ID: " + filmId;
-            log.info(message);
-            return new ResponseDefault(message, HttpStatus.OK);
-        } else {
-            throw new AlreadyExistsException("Ошибка в обработке добавления лайка");
+                    + getFilmName(filmId) + " с ID: " + filmId);
+        } catch (DataIntegrityViolationException e) {
+            checkFilmExists(filmId);
+            checkUserExists(userId);
+            throw e;
         }
+
+        String message = "Пользователь с ID: " + userId + " поставил like фильму с ID: " + filmId;
+        likeChanged(filmId, userId, true);
+        log.info(message);
+        return new ResponseDefault(message, HttpStatus.OK);
     }
 
     @Override
+    @Transactional
     public ResponseDefault removeLike(Integer filmId, Integer userId) {
+        if (likeBuffer.isEnabled()) {
+            return removeLikeWriteBehind(filmId, userId);
+        }
+
+        if (jdbcTemplate.update("DELETE FROM likes WHERE film_id = ? AND user_id = ?", filmId, userId) == 0) {
+            checkFilmExists(filmId);
+            checkUserExists(userId);
+            throw new NotFoundException("Пользователь с ID: " + userId + " не ставил like фильму "
+                    + getFilmName(filmId) + " с ID: " + filmId);
+        }
+
+        String message = "Пользователь с ID: " + userId + " удалил like фильму с ID: " + filmId;
+        likeChanged(filmId, userId, false);
+        log.info(message);
+        return new ResponseDefault(message, HttpStatus.OK);
+    }
+
+    //в режиме отложенной записи лайк проверяется и попадает в рейтинг сразу, а в БД записывается пакетом;
+    //likes_count пересчитывает сброс буфера, а неудавшаяся запись откатывает рейтинг через setFailedWriteListener
+    private ResponseDefault addLikeWriteBehind(Integer filmId, Integer userId) {
         checkFilmExists(filmId);
         checkUserExists(userId);
 
-        if (!jdbcTemplate.queryForRowSet("SELECT film_id, user_id FROM likes WHERE film_id = ? AND user_id = ?",
-                filmId, userId).next()) {
+        if (!likeBuffer.submit(filmId, userId, true)) {
+            throw new AlreadyExistsException("Пользователь с ID: " + userId + " уже поставил like фильму "
+                    + getFilmName(filmId) + " с ID: " + filmId);
+        }
+
+        String message = "Пользователь с ID: " + userId + " поставил like фильму с ID: " + filmId;
+        likeChanged(filmId, userId, true);
+        log.info(message);
+        return new ResponseDefault(message, HttpStatus.OK);
+    }
+
+    private ResponseDefault removeLikeWriteBehind(Integer filmId, Integer userId) {
+        checkFilmExists(filmId);
+        checkUserExists(userId);
+
+        if (!likeBuffer.submit(filmId, userId, false)) {
             throw new NotFoundException("Пользователь с ID: " + userId + " не ставил like фильму "
-                    + getFilm(filmId).getName() + " с ID: " + filmId);
-        } else if (jdbcTemplate.update("DELETE FROM likes WHERE film_id = ? AND user_id = ?", filmId, userId) > 0) {
-            String message = "Пользователь с ID: " + userId + " удалил like фильму "
-                    + getFilm(filmId).getName() + " с ID: " + filmId;
-            log.info(message);
-            return new ResponseDefault(message, HttpStatus.OK);
-        } else {
-            throw new AlreadyExistsException("Ошибка в обработке удаления лайка");
+                    + getFilmName(filmId) + " с ID: " + filmId);
         }
+
+        String message = "Пользователь с ID: " + userId + " удалил like фильму с ID: " + filmId;
+        likeChanged(filmId, userId, false);
+        log.info(message);
+        return new ResponseDefault(message, HttpStatus.OK);
     }
 
+    @Override
     public List<Film> getPopular(Integer count) {
-        String sql = "SELECT  f.film_id,\n" +
-                "       f.film_name,\n" +
-                "       f.description,\n" +
-                "       f.release,\n" +
-                "       f.duration,\n" +
-                "       mpa.mpa_id,\n" +
-                "       mpa.mpa_name,\n" +
-                "       fgj.genre_ids,\n" +
-                "       fgj.genre_names,\n" +
-                "       l.likes,\n" +
-                "       l.likes_count\n" +
-                "FROM films AS f\n" +
-                "LEFT OUTER JOIN mpa AS mpa ON f.mpa_id = mpa.mpa_id\n" +
-                "LEFT OUTER JOIN (SELECT fg.film_id, \n" +
-                "               STRING_AGG (fg.genre_id, ', ') AS genre_ids,\n" +
-                "               STRING_AGG (g.genre_name, ', ') AS genre_names\n" +
-                "               FROM film_genres AS fg\n" +
-                "               LEFT OUTER JOIN genres AS g ON fg.genre_id = g.genre_id\n" +
-                "               GROUP BY fg.film_id) AS fgj ON f.film_id = fgj.film_id\n" +
-                "LEFT OUTER JOIN (SELECT film_id,\n" +
-                "               STRING_AGG (user_id, ', ') AS likes,\n" +
-                "               COUNT (user_id) AS likes_count\n" +
-                "               FROM likes\n" +
-                "               GROUP BY film_id) AS l ON f.film_id = l.film_id\n" +
-                "GROUP BY f.film_id\n" +
-                "ORDER BY l.likes_count DESC, f.film_id ASC\n" +
-                "LIMIT ?;\n";
-
-        return jdbcTemplate.query(sql, (rs, rowNum) -> makeFilm(rs), count);
+        return getFilmsByIds(getPopularIds(count));
     }
 
-    private Film makeFilm(ResultSet rs) throws SQLException {
-        System.out.println(rs);
-        Integer id = rs.getInt("film_id");
-        String name = rs.getString("film_name");
-        String description = rs.getString("description");
-        LocalDate releaseDate = rs.getDate("release").toLocalDate();
-        Integer duration = rs.getInt("duration");
-        Mpa mpa = new Mpa(Integer.parseInt(rs.getString("mpa_id")), rs.getString("mpa_name"));
-        Set<Genre> genres = getGenres(rs.getString("genre_ids"), rs.getString("genre_names"));
-        Set<Long> likes = ((rs.getString("likes") == null)) ? new TreeSet<>() :
-                Stream.of(rs.getString("likes").split(", ")).map(Long::parseLong).collect(Collectors.toSet());
-
-        return new Film(id, name, description, releaseDate, duration, mpa, genres, likes);
+    //рейтинг хранится в памяти, поэтому ID популярных фильмов не требуют обращения к БД
+    public List<Integer> getPopularIds(Integer count) {
+        return leaderboard.getTop(count);
     }
 
-    private Set<Genre> getGenres(String genreIds, String genreNames) {
-        Set<Genre> genres = new TreeSet<>(Comparator.comparing(Genre::getId,
-                Comparator.nullsLast(Comparator.naturalOrder())).thenComparing(Genre::getName));
-
-        if (genreIds == null || genreNames == null) {
-            return genres;
-        }
+    //фильмы возвращаются в порядке переданных ID, несуществующие ID пропускаются
+    public List<Film> getFilmsByIds(List<Integer> ids) {
+        return assembler.findFilmsByIds(ids);
+    }
 
-        String[] ids = genreIds.split(", ");
-        String[] names = genreNames.split(", ");
+    @Override
+    public List<Film> getRecommendations(Integer userId, Integer limit) {
+        checkUserExists(userId);
 
-        if (ids.length != names.length) {
-            throw new RuntimeException("Ошибка формирования списка жанров");
+        List<Integer> filmIds = recommendationCache.get(userId, limit);
+        if (filmIds == null) {
+            filmIds = likesMatrix.getRecommendations(userId, limit);
+            recommendationCache.put(userId, limit, filmIds);
         }
 
-        for (int i = 0; i < ids.length; i++) {
-            genres.add(new Genre(Integer.parseInt(ids[i]), names[i]));
-        }
+        return assembler.findFilmsByIds(filmIds);
+    }
 
-        return genres;
+    @Override
+    public List<Film> getSimilar(Integer filmId, Integer limit) {
+        getFilmName(filmId);
+        return assembler.findFilmsByIds(likesMatrix.getSimilar(filmId, limit));
+    }
+
+    //принятый лайк после коммита учитывается в рейтинге и матрице лайков, а рекомендации пользователя пересчитываются
+    private void likeChanged(Integer filmId, Integer userId, boolean liked) {
+        AfterCommit.run(() -> {
+            leaderboard.changeLikes(filmId, liked ? 1 : -1);
+            if (liked) {
+                likesMatrix.addLike(filmId, userId);
+            } else {
+                likesMatrix.removeLike(filmId, userId);
+            }
+            recommendationCache.invalidate(userId);
+        });
+        versions.filmChanged(filmId);
     }
 
     private void checkFilmExists(Integer id) {
+        if (!filmIds.mightContain(id)) {
+            throw new NotFoundException("Фильм с ID: " + id + " не существует");
+        }
         if (!jdbcTemplate.queryForRowSet("SELECT film_id FROM films WHERE film_id = ?", id).next()) {
+            filmIds.recordFalsePositive();
             throw new NotFoundException("Фильм с ID: " + id + " не существует");
         }
     }
@@ -270,26 +509,52 @@ public class FilmDbStorage implements FilmStorage {
         }
     }
 
-    private void updateGenre(Film film) {
-        String sqlQueryDeleteGenres = "DELETE FROM film_genres WHERE film_id = ?";
-
-        jdbcTemplate.update(sqlQueryDeleteGenres, film.getId());
+    //жанры обновляются по разнице между сохраненными и переданными: удаляются только исключенные,
+    //добавляются только новые, одним пакетом
+    private void updateGenre(Film film, boolean newFilm) {
+        Set<Integer> requested = new TreeSet<>();
+        if (film.getGenres() != null) {
+            film.getGenres().forEach(genre -> requested.add(genre.getId()));
+        }
 
-        if (film.getGenres() != null && !film.getGenres().isEmpty()) {
+        Set<Integer> stored = newFilm ? new TreeSet<>() : new TreeSet<>(jdbcTemplate.queryForList(
+                "SELECT genre_id FROM film_genres WHERE film_id = ?", Integer.class, film.getId()));
 
-            String sqlQueryUpdateGenres = "INSERT INTO film_genres (film_id, genre_id) VALUES (?, ?)";
+        List<Object[]> removed = new ArrayList<>();
+        for (Integer genreId : stored) {
+            if (!requested.contains(genreId)) {
+                removed.add(new Object[]{film.getId(), genreId});
+            }
+        }
 
-            for (Genre genre : film.getGenres()) {
-                jdbcTemplate.update(sqlQueryUpdateGenres,
-                        film.getId(),
-                        genre.getId());
+        List<Object[]> added = new ArrayList<>();
+        for (Integer genreId : requested) {
+            if (!stored.contains(genreId)) {
+                added.add(new Object[]{film.getId(), genreId});
             }
         }
+
+        if (!removed.isEmpty()) {
+            jdbcTemplate.batchUpdate("DELETE FROM film_genres WHERE film_id = ? AND genre_id = ?", removed);
+        }
+
+        if (!added.isEmpty()) {
+            jdbcTemplate.batchUpdate("INSERT INTO film_genres (film_id, genre_id) VALUES (?, ?)", added);
+        }
     }
 
-    private void checkUserExists(Integer id) {
-        if (!jdbcTemplate.queryForRowSet("SELECT user_id FROM users WHERE user_id = ?", id).next()) {
-            throw new NotFoundException("Пользователь с ID: " + id + " не существует");
+    private String getFilmName(Integer filmId) {
+        List<String> names = jdbcTemplate.queryForList("SELECT film_name FROM films WHERE film_id = ?",
+                String.class, filmId);
+
+        if (names.isEmpty()) {
+            throw new NotFoundException("Фильм с ID: " + filmId + " не существует");
         }
+
+        return names.get(0);
+    }
+
+    private void checkUserExists(Integer id) {
+        userStorage.getUser(id);
     }
-}
\ No newline at end of file
+}
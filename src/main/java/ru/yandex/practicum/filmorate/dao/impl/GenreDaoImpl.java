@@ -1,35 +1,63 @@
 package ru.yandex.practicum.filmorate.dao.impl;
 
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.dao.GenreDao;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.storage.EntityVersions;
 
+import javax.annotation.PostConstruct;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.List;
 
+//жанры загружаются один раз при старте в массив, индексированный по ID, и отдаются как общие экземпляры
+@Slf4j
 @Component
 public class GenreDaoImpl implements GenreDao {
 
     public final JdbcTemplate jdbcTemplate;
+    private final EntityVersions versions;
+    private volatile Genre[] genresById = new Genre[0];
+    private volatile List<Genre> allGenres = List.of();
 
-    public GenreDaoImpl(JdbcTemplate jdbcTemplate) {
+    public GenreDaoImpl(JdbcTemplate jdbcTemplate, EntityVersions versions) {
         this.jdbcTemplate = jdbcTemplate;
+        this.versions = versions;
+    }
+
+    @Override
+    @PostConstruct
+    public void refresh() {
+        String sqlQuery = "SELECT genre_id, genre_name FROM genres ORDER BY genre_id ASC";
+        List<Genre> genres = jdbcTemplate.query(sqlQuery, this::mapRowToGenre);
+
+        Genre[] byId = new Genre[genres.isEmpty() ? 0 : genres.get(genres.size() - 1).getId() + 1];
+        genres.forEach(genre -> byId[genre.getId()] = genre);
+
+        genresById = byId;
+        allGenres = List.copyOf(genres);
+        versions.referenceChanged();
+        log.info("Справочник жанров загружен, жанров: " + genres.size());
     }
 
     @Override
     public List<Genre> getAllGenre() {
-        String sqlQuery = "SELECT genre_id, genre_name FROM genres";
-        return jdbcTemplate.query(sqlQuery, this::mapRowToGenre);
+        return allGenres;
     }
 
     @Override
     public Genre getGenre(Integer id) {
-        checkGenreExists(id);
-        String sqlQuery = "SELECT genre_id, genre_name FROM genres WHERE genre_id = ?";
-        return jdbcTemplate.queryForObject(sqlQuery, this::mapRowToGenre, id);
+        Genre[] byId = genresById;
+        Genre genre = (id != null && id >= 0 && id < byId.length) ? byId[id] : null;
+
+        if (genre == null) {
+            throw new NotFoundException("Жанр с ID: " + id + " не существует");
+        }
+
+        return genre;
     }
 
     private Genre mapRowToGenre(ResultSet resultSet, int rowNum) throws SQLException {
@@ -38,10 +66,4 @@ public class GenreDaoImpl implements GenreDao {
                 .name(resultSet.getString("genre_name"))
                 .build();
     }
-
-    private void checkGenreExists(Integer id) {
-        if (!jdbcTemplate.queryForRowSet("SELECT genre_id FROM genres WHERE genre_id = ?", id).next()) {
-            throw new NotFoundException("Жанр с ID: " + id + " не существует");
-        }
-    }
-}
\ No newline at end of file
+}
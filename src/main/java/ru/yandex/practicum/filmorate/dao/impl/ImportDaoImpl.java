@@ -0,0 +1,110 @@
+package ru.yandex.practicum.filmorate.dao.impl;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.dao.ImportDao;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static ru.yandex.practicum.filmorate.Constants.CONFIRMED_FRIENDSHIP;
+import static ru.yandex.practicum.filmorate.Constants.NOT_CONFIRMED_FRIENDSHIP;
+
+//лайки и связи дружбы импортируются пакетами INSERT ... SELECT: строка вставляется, только если фильм
+//и пользователи существуют, а такой связи еще нет, поэтому повтор части после сбоя ничего не дублирует;
+//likes_count фильмов части пересчитывается в той же транзакции, что и вставка лайков
+@Slf4j
+@Component
+public class ImportDaoImpl implements ImportDao {
+    private static final int MAX_IN_PARAMS = 1000;
+
+    public final JdbcTemplate jdbcTemplate;
+
+    public ImportDaoImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public Long getCheckpoint(String jobId, String entity) {
+        List<Long> rowsDone = jdbcTemplate.queryForList("SELECT rows_done FROM import_checkpoints " +
+                "WHERE job_id = ? AND entity = ?", Long.class, jobId, entity);
+        if (rowsDone.isEmpty() && !jdbcTemplate.queryForList("SELECT entity FROM import_checkpoints " +
+                "WHERE job_id = ?", String.class, jobId).isEmpty()) {
+            throw new RuntimeException("Задание импорта " + jobId + " уже используется для других данных");
+        }
+
+        return rowsDone.isEmpty() ? 0L : rowsDone.get(0);
+    }
+
+    @Override
+    public void saveCheckpoint(String jobId, String entity, long rowsDone) {
+        jdbcTemplate.update("MERGE INTO import_checkpoints (job_id, entity, rows_done, last_update) " +
+                "KEY (job_id) VALUES (?, ?, ?, CURRENT_TIMESTAMP)", jobId, entity, rowsDone);
+    }
+
+    @Override
+    public int importLikes(List<int[]> likes) {
+        String sqlQuery = "INSERT INTO likes (film_id, user_id, last_update) " +
+                "SELECT f.film_id, ?, CURRENT_TIMESTAMP FROM films AS f WHERE f.film_id = ? " +
+                "AND EXISTS (SELECT 1 FROM users AS u WHERE u.user_id = ?) " +
+                "AND NOT EXISTS (SELECT 1 FROM likes AS l WHERE l.film_id = ? AND l.user_id = ?)";
+
+        int[][] updated = jdbcTemplate.batchUpdate(sqlQuery, likes, likes.size(), (stmt, like) -> {
+            stmt.setInt(1, like[1]);
+            stmt.setInt(2, like[0]);
+            stmt.setInt(3, like[1]);
+            stmt.setInt(4, like[0]);
+            stmt.setInt(5, like[1]);
+        });
+
+        Object[] filmIds = likes.stream().map(like -> like[0]).distinct().toArray();
+        for (int from = 0; from < filmIds.length; from += MAX_IN_PARAMS) {
+            Object[] chunk = Arrays.copyOfRange(filmIds, from, Math.min(from + MAX_IN_PARAMS, filmIds.length));
+            jdbcTemplate.update("UPDATE films AS f " +
+                    "SET likes_count = (SELECT COUNT(*) FROM likes AS l WHERE l.film_id = f.film_id) " +
+                    "WHERE f.film_id IN (" + String.join(", ", Collections.nCopies(chunk.length, "?")) + ")", chunk);
+        }
+
+        return sum(updated);
+    }
+
+    //связь импортируется неподтвержденной, взаимные связи подтверждаются после импорта confirmMutualFriends
+    @Override
+    public int importFriends(List<int[]> friends) {
+        String sqlQuery = "INSERT INTO friends (user_id, friend_id, status_id, last_update) " +
+                "SELECT u.user_id, ?, ?, CURRENT_TIMESTAMP FROM users AS u WHERE u.user_id = ? AND u.user_id <> ? " +
+                "AND EXISTS (SELECT 1 FROM users AS f WHERE f.user_id = ?) " +
+                "AND NOT EXISTS (SELECT 1 FROM friends AS fr WHERE fr.user_id = ? AND fr.friend_id = ?)";
+
+        int[][] updated = jdbcTemplate.batchUpdate(sqlQuery, friends, friends.size(), (stmt, friend) -> {
+            stmt.setInt(1, friend[1]);
+            stmt.setInt(2, NOT_CONFIRMED_FRIENDSHIP);
+            stmt.setInt(3, friend[0]);
+            stmt.setInt(4, friend[1]);
+            stmt.setInt(5, friend[1]);
+            stmt.setInt(6, friend[0]);
+            stmt.setInt(7, friend[1]);
+        });
+
+        return sum(updated);
+    }
+
+    @Override
+    public int confirmMutualFriends() {
+        return jdbcTemplate.update("UPDATE friends AS f SET status_id = ? WHERE status_id = ? " +
+                "AND EXISTS (SELECT 1 FROM friends AS r WHERE r.user_id = f.friend_id AND r.friend_id = f.user_id)",
+                CONFIRMED_FRIENDSHIP, NOT_CONFIRMED_FRIENDSHIP);
+    }
+
+    private int sum(int[][] updated) {
+        int rows = 0;
+        for (int[] batch : updated) {
+            for (int count : batch) {
+                rows += count;
+            }
+        }
+        return rows;
+    }
+}
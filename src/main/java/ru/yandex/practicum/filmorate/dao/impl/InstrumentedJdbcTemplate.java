@@ -0,0 +1,212 @@
+package ru.yandex.practicum.filmorate.dao.impl;
+
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterDisposer;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.jdbc.core.PreparedStatementCallback;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.PreparedStatementSetter;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.SqlProvider;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.function.Supplier;
+
+//класс InstrumentedJdbcTemplate - JdbcTemplate хранилищ, который замеряет каждый вызов запроса, изменения
+//или пакета на уровне самого шаблона, без оберток над соединением и statement: время вызова (вместе с получением
+//соединения и разбором строк), число строк и параметры передаются в QueryMetrics; прочитанные строки считаются
+//по результату ResultSetExtractor (список строк) или обработчиком RowCallbackHandler, измененные - по ответу
+//update и batchUpdate; SQL берется из SqlProvider, поэтому statement с особыми настройками создаются через
+//PreparedStatementCreatorFactory; запросы без параметров выполняются как подготовленные, чтобы проходить
+//через тот же путь
+@Component
+public class InstrumentedJdbcTemplate extends JdbcTemplate {
+    private final QueryMetrics metrics;
+
+    public InstrumentedJdbcTemplate(DataSource dataSource, QueryMetrics metrics) {
+        super(dataSource);
+        this.metrics = metrics;
+    }
+
+    @Override
+    public <T> T query(PreparedStatementCreator psc, PreparedStatementSetter pss, ResultSetExtractor<T> rse)
+            throws DataAccessException {
+        return record(getSql(psc), params(pss), 0, () -> super.query(psc, pss, rse), result -> rowCount(rse, result));
+    }
+
+    @Override
+    public <T> T query(String sql, ResultSetExtractor<T> rse) throws DataAccessException {
+        return query(sql, (PreparedStatementSetter) null, rse);
+    }
+
+    @Override
+    public void query(String sql, RowCallbackHandler rch) throws DataAccessException {
+        query(sql, (PreparedStatementSetter) null, rch);
+    }
+
+    @Override
+    public void query(String sql, PreparedStatementSetter pss, RowCallbackHandler rch) throws DataAccessException {
+        query(sql, pss, new CountingExtractor(rch));
+    }
+
+    @Override
+    public void query(PreparedStatementCreator psc, RowCallbackHandler rch) throws DataAccessException {
+        query(psc, new CountingExtractor(rch));
+    }
+
+    @Override
+    protected int update(PreparedStatementCreator psc, PreparedStatementSetter pss) throws DataAccessException {
+        return record(getSql(psc), params(pss), 0, () -> super.update(psc, pss), Integer::longValue);
+    }
+
+    @Override
+    public int update(PreparedStatementCreator psc, KeyHolder generatedKeyHolder) throws DataAccessException {
+        return record(getSql(psc), null, 0, () -> super.update(psc, generatedKeyHolder), Integer::longValue);
+    }
+
+    @Override
+    public int update(String sql) throws DataAccessException {
+        return update(sql, (PreparedStatementSetter) null);
+    }
+
+    //пакет из списка параметров тоже приходит сюда, через BatchPreparedStatementSetter шаблона
+    @Override
+    public int[] batchUpdate(String sql, BatchPreparedStatementSetter pss) throws DataAccessException {
+        return record(sql, null, pss.getBatchSize(), () -> super.batchUpdate(sql, pss),
+                InstrumentedJdbcTemplate::sum);
+    }
+
+    @Override
+    public <T> int[][] batchUpdate(String sql, Collection<T> batchArgs, int batchSize,
+                                   ParameterizedPreparedStatementSetter<T> pss) throws DataAccessException {
+        return record(sql, null, batchArgs.size(), () -> super.batchUpdate(sql, batchArgs, batchSize, pss),
+                counts -> {
+                    long rows = 0;
+                    for (int[] batch : counts) {
+                        rows += sum(batch);
+                    }
+                    return rows;
+                });
+    }
+
+    //хранилища выполняют через callback пакетную вставку с возвратом ключей: строк столько, сколько ключей
+    @Override
+    public <T> T execute(PreparedStatementCreator psc, PreparedStatementCallback<T> action)
+            throws DataAccessException {
+        return record(getSql(psc), null, 0, () -> super.execute(psc, action),
+                result -> (result instanceof int[]) ? ((int[]) result).length : 0);
+    }
+
+    //параметры запроса запоминаются для журнала медленных запросов
+    @Override
+    protected PreparedStatementSetter newArgPreparedStatementSetter(Object[] args) {
+        return new ArgsSetter(args, super.newArgPreparedStatementSetter(args));
+    }
+
+    @Override
+    protected PreparedStatementSetter newArgTypePreparedStatementSetter(Object[] args, int[] argTypes) {
+        return new ArgsSetter(args, super.newArgTypePreparedStatementSetter(args, argTypes));
+    }
+
+    //вызов без SQL (statement создан не через SqlProvider) не учитывается
+    private <T> T record(String sql, Object[] params, int batchSize, Supplier<T> call, RowCounter<T> rows) {
+        if (sql == null) {
+            return call.get();
+        }
+        long startedAt = System.nanoTime();
+        T result;
+        try {
+            result = call.get();
+        } catch (RuntimeException e) {
+            metrics.record(sql, System.nanoTime() - startedAt, 0, true, params, batchSize);
+            throw e;
+        }
+        metrics.record(sql, System.nanoTime() - startedAt, rows.count(result), false, params, batchSize);
+        return result;
+    }
+
+    //параметры известны, если их передали списком или их нет совсем
+    private static Object[] params(PreparedStatementSetter pss) {
+        if (pss == null) {
+            return new Object[0];
+        }
+        return (pss instanceof ArgsSetter) ? ((ArgsSetter) pss).args : null;
+    }
+
+    private static String getSql(PreparedStatementCreator psc) {
+        return (psc instanceof SqlProvider) ? ((SqlProvider) psc).getSql() : null;
+    }
+
+    //RowMapper возвращает список строк, остальные результаты считаются одной строкой
+    private static long rowCount(ResultSetExtractor<?> rse, Object result) {
+        if (rse instanceof CountingExtractor) {
+            return ((CountingExtractor) rse).rows;
+        }
+        if (result instanceof Collection) {
+            return ((Collection<?>) result).size();
+        }
+        return (result == null) ? 0 : 1;
+    }
+
+    private static long sum(int[] counts) {
+        long rows = 0;
+        for (int count : counts) {
+            rows += Math.max(count, 0);
+        }
+        return rows;
+    }
+
+    private interface RowCounter<T> {
+        long count(T result);
+    }
+
+    //обход строк для RowCallbackHandler с подсчетом переданных ему строк
+    private static final class CountingExtractor implements ResultSetExtractor<Object> {
+        private final RowCallbackHandler rch;
+        private long rows;
+
+        private CountingExtractor(RowCallbackHandler rch) {
+            this.rch = rch;
+        }
+
+        @Override
+        public Object extractData(ResultSet rs) throws SQLException {
+            while (rs.next()) {
+                rch.processRow(rs);
+                rows++;
+            }
+            return null;
+        }
+    }
+
+    private static final class ArgsSetter implements PreparedStatementSetter, ParameterDisposer {
+        private final Object[] args;
+        private final PreparedStatementSetter setter;
+
+        private ArgsSetter(Object[] args, PreparedStatementSetter setter) {
+            this.args = args;
+            this.setter = setter;
+        }
+
+        @Override
+        public void setValues(PreparedStatement ps) throws SQLException {
+            setter.setValues(ps);
+        }
+
+        @Override
+        public void cleanupParameters() {
+            if (setter instanceof ParameterDisposer) {
+                ((ParameterDisposer) setter).cleanupParameters();
+            }
+        }
+    }
+}
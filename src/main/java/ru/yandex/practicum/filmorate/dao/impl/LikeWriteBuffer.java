@@ -0,0 +1,306 @@
+package ru.yandex.practicum.filmorate.dao.impl;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.filmorate.model.IdSet;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+//класс LikeWriteBuffer - отложенная запись лайков: изменения копятся в ограниченной очереди
+//и сбрасываются в LIKES пакетами раз в flush-interval-ms или по накоплении batch-size изменений;
+//изменение, которое не удалось записать за MAX_ATTEMPTS сбросов, отбрасывается и передается failedWrites
+@Slf4j
+@Component
+public class LikeWriteBuffer {
+    private static final int LOCK_STRIPES = 64;
+    private static final int MAX_IN_PARAMS = 1000;
+    private static final int MAX_ATTEMPTS = 3;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final long flushIntervalMs;
+    private final int batchSize;
+    private final BlockingQueue<LikeChange> queue;
+    //последнее еще не записанное в БД состояние лайка: filmId -> (userId -> поставлен ли лайк)
+    private final Map<Integer, Map<Integer, Boolean>> pending = new ConcurrentHashMap<>();
+    private final Object[] locks = new Object[LOCK_STRIPES];
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    private ScheduledExecutorService flusher;
+    private volatile FailedWriteListener failedWrites = (filmId, userId, liked) -> {
+    };
+
+    public LikeWriteBuffer(JdbcTemplate jdbcTemplate,
+                           TransactionTemplate transactionTemplate,
+                           @Value("${filmorate.likes.write-behind.enabled:false}") boolean enabled,
+                           @Value("${filmorate.likes.write-behind.flush-interval-ms:200}") long flushIntervalMs,
+                           @Value("${filmorate.likes.write-behind.batch-size:500}") int batchSize,
+                           @Value("${filmorate.likes.write-behind.capacity:10000}") int capacity) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.enabled = enabled;
+        this.flushIntervalMs = flushIntervalMs;
+        this.batchSize = batchSize;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        if (enabled) {
+            flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "likes-write-behind");
+                thread.setDaemon(true);
+                return thread;
+            });
+            flusher.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMs, flushIntervalMs,
+                    TimeUnit.MILLISECONDS);
+            log.info("Включена отложенная запись лайков, интервал: " + flushIntervalMs + " мс, пакет: "
+                    + batchSize);
+        }
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (flusher != null) {
+            flusher.shutdown();
+            flusher.awaitTermination(flushIntervalMs * 10, TimeUnit.MILLISECONDS);
+        }
+        flush();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setFailedWriteListener(FailedWriteListener failedWrites) {
+        this.failedWrites = failedWrites;
+    }
+
+    //возвращает false, если с учетом еще не записанных изменений лайк уже находится в запрошенном состоянии;
+    //при заполненной очереди вызывающий поток ждет, пока поток записи освободит место: сброс в потоке
+    //вызывающего попал бы в его транзакцию, и ошибка пакета откатила бы ее
+    public boolean submit(Integer filmId, Integer userId, boolean liked) {
+        synchronized (locks[Math.floorMod(filmId * 31 + userId, LOCK_STRIPES)]) {
+            Map<Integer, Boolean> filmPending = pending.get(filmId);
+            Boolean state = (filmPending == null) ? null : filmPending.get(userId);
+            boolean current = (state != null) ? state : jdbcTemplate.queryForRowSet(
+                    "SELECT user_id FROM likes WHERE film_id = ? AND user_id = ?", filmId, userId).next();
+
+            if (current == liked) {
+                return false;
+            }
+
+            pending.computeIfAbsent(filmId, id -> new ConcurrentHashMap<>()).put(userId, liked);
+            LikeChange change = new LikeChange(filmId, userId, liked, 1);
+            if (!queue.offer(change)) {
+                requestFlush();
+                try {
+                    queue.put(change);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    clearPending(change);
+                    throw new IllegalStateException("Очередь отложенной записи лайков переполнена");
+                }
+            }
+        }
+
+        if (queue.size() >= batchSize) {
+            requestFlush();
+        }
+        return true;
+    }
+
+    //накладывает еще не записанные изменения на прочитанные из БД лайки фильма
+    public void applyPending(Integer filmId, IdSet likes) {
+        Map<Integer, Boolean> filmPending = pending.get(filmId);
+        if (filmPending != null) {
+            filmPending.forEach((userId, liked) -> {
+                if (liked) {
+                    likes.addInt(userId);
+                } else {
+                    likes.removeInt(userId);
+                }
+            });
+        }
+    }
+
+    //на сколько еще не записанные изменения меняют количество лайков фильма в таблице LIKES: ожидающий лайк
+    //учитывается, только если его нет в таблице, а ожидающее удаление - только если он в ней есть
+    public int pendingDelta(Integer filmId) {
+        Map<Integer, Boolean> filmPending = pending.get(filmId);
+        if (filmPending == null) {
+            return 0;
+        }
+        Map<Integer, Boolean> changes = new HashMap<>(filmPending);
+        Object[] userIds = changes.keySet().toArray();
+
+        Set<Integer> stored = new HashSet<>();
+        for (int from = 0; from < userIds.length; from += MAX_IN_PARAMS) {
+            Object[] chunk = Arrays.copyOfRange(userIds, from, Math.min(from + MAX_IN_PARAMS, userIds.length));
+            Object[] params = new Object[chunk.length + 1];
+            params[0] = filmId;
+            System.arraycopy(chunk, 0, params, 1, chunk.length);
+            stored.addAll(jdbcTemplate.queryForList("SELECT user_id FROM likes WHERE film_id = ? AND user_id IN ("
+                    + String.join(", ", Collections.nCopies(chunk.length, "?")) + ")", Integer.class, params));
+        }
+
+        int delta = 0;
+        for (Map.Entry<Integer, Boolean> change : changes.entrySet()) {
+            if (change.getValue() != stored.contains(change.getKey())) {
+                delta += change.getValue() ? 1 : -1;
+            }
+        }
+        return delta;
+    }
+
+    //изменения, не записанные из-за ошибки, возвращаются в очередь после сброса, чтобы повторить их
+    //следующим сбросом, а не сразу же
+    public synchronized void flush() {
+        flushRequested.set(false);
+        List<LikeChange> batch = new ArrayList<>(batchSize);
+        List<LikeChange> retries = new ArrayList<>();
+        while (queue.drainTo(batch, batchSize) > 0) {
+            write(batch, retries);
+            batch.clear();
+        }
+        retries.forEach(this::retry);
+    }
+
+    private void requestFlush() {
+        if (flusher != null && flushRequested.compareAndSet(false, true)) {
+            try {
+                flusher.execute(this::flushQuietly);
+            } catch (RejectedExecutionException e) {
+                flushRequested.set(false);
+            }
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.warn("Ошибка отложенной записи лайков: " + e.getMessage());
+        }
+    }
+
+    private void write(List<LikeChange> batch, List<LikeChange> retries) {
+        //изменения одного лайка чередуются (поставлен / удален), поэтому в БД достаточно записать последнее
+        Map<Long, LikeChange> last = new LinkedHashMap<>();
+        for (LikeChange change : batch) {
+            last.put(((long) change.filmId << 32) | (change.userId & 0xFFFFFFFFL), change);
+        }
+
+        //ожидающее состояние снимается только с записанных изменений, иначе чтения увидели бы таблицу без них
+        try {
+            transactionTemplate.executeWithoutResult(status -> writeChanges(last.values()));
+            last.values().forEach(this::clearPending);
+        } catch (DataAccessException e) {
+            log.warn("Пакет лайков не записан (" + e.getMessage() + "), запись по одному изменению");
+            last.values().forEach(change -> {
+                try {
+                    transactionTemplate.executeWithoutResult(status -> writeChanges(List.of(change)));
+                    clearPending(change);
+                } catch (DataAccessException changeException) {
+                    log.warn("Лайк фильму с ID: " + change.filmId + " от пользователя с ID: " + change.userId
+                            + " не записан (попытка " + change.attempt + "): " + changeException.getMessage());
+                    retries.add(change);
+                }
+            });
+        }
+    }
+
+    //изменение, которое уже заменено более новым, не повторяется; после MAX_ATTEMPTS попыток или при
+    //заполненной очереди изменение отбрасывается, а failedWrites отменяет его в рейтинге и матрице лайков
+    private void retry(LikeChange change) {
+        Map<Integer, Boolean> filmPending = pending.get(change.filmId);
+        if (filmPending == null || !Boolean.valueOf(change.liked).equals(filmPending.get(change.userId))) {
+            return;
+        }
+        if (change.attempt < MAX_ATTEMPTS
+                && queue.offer(new LikeChange(change.filmId, change.userId, change.liked, change.attempt + 1))) {
+            return;
+        }
+        log.warn("Лайк фильму с ID: " + change.filmId + " от пользователя с ID: " + change.userId + " отброшен");
+        clearPending(change);
+        failedWrites.accept(change.filmId, change.userId, change.liked);
+    }
+
+    private void clearPending(LikeChange change) {
+        pending.computeIfPresent(change.filmId, (filmId, filmPending) -> {
+            filmPending.remove(change.userId, change.liked);
+            return filmPending.isEmpty() ? null : filmPending;
+        });
+    }
+
+    private void writeChanges(Collection<LikeChange> changes) {
+        List<Object[]> inserts = new ArrayList<>();
+        List<Object[]> deletes = new ArrayList<>();
+
+        for (LikeChange change : changes) {
+            (change.liked ? inserts : deletes).add(new Object[]{change.filmId, change.userId});
+        }
+
+        if (!inserts.isEmpty()) {
+            jdbcTemplate.batchUpdate("MERGE INTO likes (film_id, user_id, last_update) KEY (film_id, user_id) " +
+                    "VALUES (?, ?, CURRENT_TIMESTAMP)", inserts);
+        }
+
+        if (!deletes.isEmpty()) {
+            jdbcTemplate.batchUpdate("DELETE FROM likes WHERE film_id = ? AND user_id = ?", deletes);
+        }
+
+        //likes_count пересчитывается в той же транзакции, что и записанные лайки
+        Object[] filmIds = changes.stream().map(change -> change.filmId).distinct().toArray();
+        for (int from = 0; from < filmIds.length; from += MAX_IN_PARAMS) {
+            Object[] chunk = Arrays.copyOfRange(filmIds, from, Math.min(from + MAX_IN_PARAMS, filmIds.length));
+            jdbcTemplate.update("UPDATE films AS f " +
+                    "SET likes_count = (SELECT COUNT(*) FROM likes AS l WHERE l.film_id = f.film_id) " +
+                    "WHERE f.film_id IN (" + String.join(", ", Collections.nCopies(chunk.length, "?")) + ")", chunk);
+        }
+    }
+
+    public interface FailedWriteListener {
+        void accept(int filmId, int userId, boolean liked);
+    }
+
+    private static final class LikeChange {
+        private final int filmId;
+        private final int userId;
+        private final boolean liked;
+        private final int attempt;
+
+        private LikeChange(int filmId, int userId, boolean liked, int attempt) {
+            this.filmId = filmId;
+            this.userId = userId;
+            this.liked = liked;
+            this.attempt = attempt;
+        }
+    }
+}
@@ -1,35 +1,64 @@
 package ru.yandex.practicum.filmorate.dao.impl;
 
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.dao.MpaDao;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.storage.EntityVersions;
 
+import javax.annotation.PostConstruct;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.List;
+import java.util.stream.Collectors;
 
+//рейтинги MPA загружаются один раз при старте в массив, индексированный по ID, и отдаются как общие экземпляры
+@Slf4j
 @Component
 public class MpaDaoImpl implements MpaDao {
 
     public final JdbcTemplate jdbcTemplate;
+    private final EntityVersions versions;
+    private volatile Mpa[] mpaById = new Mpa[0];
+    private volatile List<Mpa> allMpa = List.of();
 
-    public MpaDaoImpl(JdbcTemplate jdbcTemplate) {
+    public MpaDaoImpl(JdbcTemplate jdbcTemplate, EntityVersions versions) {
         this.jdbcTemplate = jdbcTemplate;
+        this.versions = versions;
+    }
+
+    @Override
+    @PostConstruct
+    public void refresh() {
+        String sqlQuery = "SELECT mpa_id, mpa_name FROM mpa ORDER BY mpa_id ASC";
+        List<Mpa> mpaList = jdbcTemplate.query(sqlQuery, this::mapRowToMpa);
+
+        Mpa[] byId = new Mpa[mpaList.isEmpty() ? 0 : mpaList.get(mpaList.size() - 1).getId() + 1];
+        mpaList.forEach(mpa -> byId[mpa.getId()] = mpa);
+
+        mpaById = byId;
+        allMpa = mpaList.stream().filter(mpa -> mpa.getId() != 0).collect(Collectors.toUnmodifiableList());
+        versions.referenceChanged();
+        log.info("Справочник рейтингов MPA загружен, рейтингов: " + mpaList.size());
     }
 
     @Override
     public List<Mpa> getAllMpa() {
-        String sqlQuery = "SELECT mpa_id, mpa_name FROM mpa WHERE NOT mpa_id = 0";
-        return jdbcTemplate.query(sqlQuery, this::mapRowToMpa);
+        return allMpa;
     }
 
     @Override
     public Mpa getMpa(Integer id) {
-        checkMpaExists(id);
-        String sqlQuery = "SELECT mpa_id, mpa_name FROM mpa WHERE mpa_id = ?";
-        return jdbcTemplate.queryForObject(sqlQuery, this::mapRowToMpa, id);
+        Mpa[] byId = mpaById;
+        Mpa mpa = (id != null && id >= 0 && id < byId.length) ? byId[id] : null;
+
+        if (mpa == null) {
+            throw new NotFoundException("MPA с ID: " + id + " не существует");
+        }
+
+        return mpa;
     }
 
     private Mpa mapRowToMpa(ResultSet resultSet, int rowNum) throws SQLException {
@@ -38,10 +67,4 @@ public class MpaDaoImpl implements MpaDao {
                 .name(resultSet.getString("mpa_name"))
                 .build();
     }
-
-    private void checkMpaExists(Integer id) {
-        if (!jdbcTemplate.queryForRowSet("SELECT mpa_id FROM mpa WHERE mpa_id = ?", id).next()) {
-            throw new NotFoundException("MPA с ID: " + id + " не существует");
-        }
-    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,206 @@
+package ru.yandex.practicum.filmorate.dao.impl;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.QueryStats;
+
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+//класс QueryMetrics - статистика запросов InstrumentedJdbcTemplate: запрос определяется текстом SQL, в котором
+//списки IN (?, ?, ...) любой длины и пробелы приведены к одному виду, а имя запроса - команда, первая таблица
+//и хеш текста (например, "SELECT users:1a2b3c4d"), поэтому имя зависит только от SQL и не меняется между запусками;
+//запросы дольше slow-query-ms пишутся в журнал с параметрами и планом H2, план строится в отдельном потоке
+@Slf4j
+@Component
+public class QueryMetrics {
+    private static final long[] BUCKET_BOUNDS_MICROS = {100, 250, 500, 1_000, 2_500, 5_000, 10_000, 25_000, 50_000,
+            100_000, 250_000, 500_000, 1_000_000};
+    private static final int MAX_CACHED_SQL = 10_000;
+    private static final int EXPLAIN_QUEUE_SIZE = 100;
+    private static final Pattern IN_LIST = Pattern.compile("\\?(\\s*,\\s*\\?)+");
+    private static final Pattern SPACES = Pattern.compile("\\s+");
+    private static final Pattern TABLE = Pattern.compile("\\b(?:FROM|INTO|UPDATE)\\s+(\\w+)",
+            Pattern.CASE_INSENSITIVE);
+    private static final Pattern EXPLAINABLE = Pattern.compile("^(SELECT|INSERT|UPDATE|DELETE|MERGE)\\b",
+            Pattern.CASE_INSENSITIVE);
+
+    //исходный текст SQL -> запрос, чтобы не нормализовать текст при каждом выполнении
+    private final Map<String, Query> bySql = new ConcurrentHashMap<>();
+    private final Map<String, Query> byNormalizedSql = new ConcurrentHashMap<>();
+    private final JdbcTemplate explainTemplate;
+    private final long slowQueryNanos;
+    private final ThreadPoolExecutor explainer;
+
+    public QueryMetrics(DataSource dataSource,
+                        @Value("${filmorate.jdbc.slow-query-ms:200}") long slowQueryMs) {
+        this.explainTemplate = new JdbcTemplate(dataSource);
+        this.slowQueryNanos = TimeUnit.MILLISECONDS.toNanos(slowQueryMs);
+        this.explainer = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(EXPLAIN_QUEUE_SIZE), runnable -> {
+            Thread thread = new Thread(runnable, "slow-query-explain");
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.DiscardPolicy());
+    }
+
+    @PreDestroy
+    public void stop() {
+        explainer.shutdownNow();
+    }
+
+    //params - параметры запроса по порядку или null, если они неизвестны (пакеты, statement с ключами)
+    public void record(String sql, long nanos, long rows, boolean failed, Object[] params, int batchSize) {
+        Query query = bySql.get(sql);
+        if (query == null) {
+            query = byNormalizedSql.computeIfAbsent(normalize(sql), Query::new);
+            if (bySql.size() < MAX_CACHED_SQL) {
+                bySql.put(sql, query);
+            }
+        }
+        query.record(nanos, rows, failed);
+
+        if (nanos >= slowQueryNanos) {
+            logSlowQuery(query, sql, nanos, rows, params, batchSize);
+        }
+    }
+
+    //запросы по убыванию суммарного времени
+    public List<QueryStats> getStats() {
+        return byNormalizedSql.values().stream()
+                .map(Query::getStats)
+                .sorted(Comparator.comparingDouble(QueryStats::getTotalMs).reversed())
+                .collect(Collectors.toList());
+    }
+
+    private void logSlowQuery(Query query, String sql, long nanos, long rows, Object[] params, int batchSize) {
+        String message = "Медленный запрос " + query.name + ": " + toMs(nanos) + " мс, строк: " + rows
+                + (batchSize > 0 ? ", пакет: " + batchSize : "")
+                + ", параметры: " + (params == null ? "неизвестны" : Arrays.toString(params)) + "\n" + sql;
+        if (params == null || !EXPLAINABLE.matcher(sql.trim()).find()) {
+            log.warn(message);
+            return;
+        }
+
+        Object[] args = params.clone();
+        explainer.execute(() -> {
+            String plan;
+            try {
+                plan = explainTemplate.queryForList("EXPLAIN " + sql, String.class, args).stream()
+                        .collect(Collectors.joining("\n"));
+            } catch (RuntimeException e) {
+                plan = "план не получен: " + e.getMessage();
+            }
+            log.warn(message + "\nплан:\n" + plan);
+        });
+    }
+
+    private static String normalize(String sql) {
+        return SPACES.matcher(IN_LIST.matcher(sql.trim()).replaceAll("?, ...")).replaceAll(" ");
+    }
+
+    private static String name(String sql) {
+        Matcher table = TABLE.matcher(sql);
+        String command = sql.split(" ", 2)[0].toUpperCase();
+        return command + (table.find() ? " " + table.group(1).toLowerCase() : "")
+                + ":" + String.format("%08x", sql.hashCode());
+    }
+
+    private static double toMs(long nanos) {
+        return Math.round(nanos / 1_000.0) / 1_000.0;
+    }
+
+    private static final class Query {
+        private final String name;
+        private final String sql;
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder rows = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+        private final LongAdder[] buckets = new LongAdder[BUCKET_BOUNDS_MICROS.length + 1];
+
+        private Query(String sql) {
+            this.sql = sql;
+            this.name = name(sql);
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        private void record(long nanos, long rowCount, boolean failed) {
+            calls.increment();
+            if (failed) {
+                errors.increment();
+            }
+            rows.add(rowCount);
+            totalNanos.add(nanos);
+            maxNanos.accumulateAndGet(nanos, Math::max);
+
+            long micros = nanos / 1_000;
+            int bucket = 0;
+            while (bucket < BUCKET_BOUNDS_MICROS.length && micros > BUCKET_BOUNDS_MICROS[bucket]) {
+                bucket++;
+            }
+            buckets[bucket].increment();
+        }
+
+        private QueryStats getStats() {
+            long[] counts = new long[buckets.length];
+            long callCount = 0;
+            Map<String, Long> histogram = new LinkedHashMap<>();
+            for (int i = 0; i < buckets.length; i++) {
+                counts[i] = buckets[i].sum();
+                callCount += counts[i];
+                histogram.put(i < BUCKET_BOUNDS_MICROS.length ? String.valueOf(BUCKET_BOUNDS_MICROS[i] / 1_000.0)
+                        : "+Inf", counts[i]);
+            }
+            long total = totalNanos.sum();
+            long max = maxNanos.get();
+
+            return QueryStats.builder()
+                    .name(name)
+                    .sql(sql)
+                    .calls(callCount)
+                    .errors(errors.sum())
+                    .rows(rows.sum())
+                    .totalMs(toMs(total))
+                    .meanMs(callCount == 0 ? 0 : toMs(total / callCount))
+                    .maxMs(toMs(max))
+                    .p50Ms(percentile(counts, callCount, 0.5, max))
+                    .p95Ms(percentile(counts, callCount, 0.95, max))
+                    .p99Ms(percentile(counts, callCount, 0.99, max))
+                    .histogramMs(histogram)
+                    .build();
+        }
+
+        //верхняя граница интервала, в который попадает перцентиль, но не больше максимума
+        private static double percentile(long[] counts, long callCount, double quantile, long maxNanos) {
+            long rank = (long) Math.ceil(callCount * quantile);
+            long seen = 0;
+            for (int i = 0; i < BUCKET_BOUNDS_MICROS.length; i++) {
+                seen += counts[i];
+                if (seen >= rank && seen > 0) {
+                    return Math.min(BUCKET_BOUNDS_MICROS[i] / 1_000.0, toMs(maxNanos));
+                }
+            }
+            return toMs(maxNanos);
+        }
+    }
+}
@@ -1,28 +1,50 @@
 package ru.yandex.practicum.filmorate.dao.impl;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.http.HttpStatus;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCallback;
+import org.springframework.jdbc.core.PreparedStatementCreatorFactory;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import ru.yandex.practicum.filmorate.Constants;
 import ru.yandex.practicum.filmorate.exception.AlreadyExistsException;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.model.BatchItemResult;
+import ru.yandex.practicum.filmorate.model.IdSet;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.service.ResponseDefault;
+import ru.yandex.practicum.filmorate.storage.AfterCommit;
+import ru.yandex.practicum.filmorate.storage.EntityVersions;
+import ru.yandex.practicum.filmorate.storage.IdBloomFilter;
+import ru.yandex.practicum.filmorate.storage.IdFilterRegistry;
+import ru.yandex.practicum.filmorate.storage.film.FilmLeaderboard;
+import ru.yandex.practicum.filmorate.storage.film.LikesMatrix;
+import ru.yandex.practicum.filmorate.storage.film.RecommendationCache;
+import ru.yandex.practicum.filmorate.storage.user.FriendGraph;
+import ru.yandex.practicum.filmorate.storage.user.UserCache;
 import ru.yandex.practicum.filmorate.storage.user.UserStorage;
 
+import javax.annotation.PostConstruct;
 import java.sql.Date;
-import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Types;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.TreeSet;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 import static ru.yandex.practicum.filmorate.Constants.CONFIRMED_FRIENDSHIP;
 import static ru.yandex.practicum.filmorate.Constants.NOT_CONFIRMED_FRIENDSHIP;
@@ -31,46 +53,96 @@ import static ru.yandex.practicum.filmorate.Constants.NOT_CONFIRMED_FRIENDSHIP;
 @Component
 public class UserDbStorage implements UserStorage {
 
-    public final JdbcTemplate jdbcTemplate;
+    private static final int MAX_IN_PARAMS = 1000;
+    private static final String USERS_SQL = "SELECT  u.user_id,\n" +
+            "       u.email,\n" +
+            "       u.login,\n" +
+            "       u.user_name,\n" +
+            "       u.birthday\n" +
+            "FROM users AS u\n";
 
-    public UserDbStorage(JdbcTemplate jdbcTemplate) {
+    public final JdbcTemplate jdbcTemplate;
+    private final FriendGraph friendGraph;
+    private final LikesMatrix likesMatrix;
+    private final FilmLeaderboard leaderboard;
+    private final RecommendationCache recommendationCache;
+    private final boolean suggestUnconfirmed;
+    private final EntityVersions versions;
+    private final UserCache userCache;
+    private final IdBloomFilter userIds;
+
+    public UserDbStorage(JdbcTemplate jdbcTemplate, FriendGraph friendGraph, LikesMatrix likesMatrix,
+                         FilmLeaderboard leaderboard, RecommendationCache recommendationCache, EntityVersions versions,
+                         UserCache userCache, IdFilterRegistry idFilters,
+                         @Value("${filmorate.friends.suggestions.include-unconfirmed:true}") boolean suggestUnconfirmed) {
         this.jdbcTemplate = jdbcTemplate;
+        this.friendGraph = friendGraph;
+        this.likesMatrix = likesMatrix;
+        this.leaderboard = leaderboard;
+        this.recommendationCache = recommendationCache;
+        this.suggestUnconfirmed = suggestUnconfirmed;
+        this.versions = versions;
+        this.userCache = userCache;
+        this.userIds = idFilters.register("users", ids -> jdbcTemplate.query("SELECT user_id FROM users",
+                rs -> {
+                    ids.accept(rs.getInt("user_id"));
+                }));
+    }
+
+    @PostConstruct
+    public void loadIdFilter() {
+        userIds.rebuild();
+    }
+
+    @PostConstruct
+    public void loadFriendGraph() {
+        FriendGraph.Builder builder = new FriendGraph.Builder();
+        int[] edges = new int[1];
+        jdbcTemplate.query("SELECT user_id, friend_id FROM friends ORDER BY user_id ASC, friend_id ASC", rs -> {
+            builder.addEdge(rs.getInt("user_id"), rs.getInt("friend_id"));
+            edges[0]++;
+        });
+
+        friendGraph.load(builder);
+        log.info("Граф дружбы загружен, связей: " + edges[0]);
+    }
+
+    @Override
+    public void reloadFriends() {
+        loadFriendGraph();
+        versions.allUsersChanged();
+        userCache.clear();
     }
 
     @Override
-    public Map<Integer, User> getUsers() {
-        String sql = "SELECT  u.user_id,\n" +
-                "       u.email,\n" +
-                "       u.login,\n" +
-                "       u.user_name,\n" +
-                "       u.birthday,\n" +
-                "       STRING_AGG (f.friend_id, ', ') AS friends\n" +
-                "FROM users AS u\n" +
-                "LEFT OUTER JOIN friends AS f ON u.user_id = f.user_id\n" +
-                "GROUP BY u.user_id\n" +
-                "ORDER BY u.user_id ASC;";
-
-        List<User> usersList = jdbcTemplate.query(sql, (rs, rowNum) -> makeUser(rs));
-
-        return usersList.stream().collect(Collectors.toMap(User::getId, user -> user));
+    public List<User> getUsers(Integer after, Integer limit) {
+        return jdbcTemplate.query(USERS_SQL + "WHERE u.user_id > ?\nORDER BY u.user_id ASC\nLIMIT ?",
+                (rs, rowNum) -> makeUser(rs), after, limit);
+    }
+
+    @Override
+    public void streamUsers(Consumer<User> consumer) {
+        String sql = USERS_SQL + "ORDER BY u.user_id ASC";
+
+        jdbcTemplate.query(sql, stmt -> stmt.setFetchSize(Constants.STREAM_FETCH_SIZE), rs -> {
+            consumer.accept(makeUser(rs));
+        });
     }
 
     @Override
     public User getUser(Integer id) {
-        checkUserExists(id);
+        if (!userIds.mightContain(id)) {
+            throw new NotFoundException("Пользователь с ID: " + id + " не существует");
+        }
 
-        String sql = "SELECT  u.user_id,\n" +
-                "       u.email,\n" +
-                "       u.login,\n" +
-                "       u.user_name,\n" +
-                "       u.birthday,\n" +
-                "       STRING_AGG (f.friend_id, ', ') AS friends\n" +
-                "FROM users AS u\n" +
-                "LEFT OUTER JOIN friends AS f ON u.user_id = f.user_id\n" +
-                "WHERE u.user_id = ?\n" +
-                "GROUP BY u.user_id";
-
-        return jdbcTemplate.queryForObject(sql, (rs, rowNum) -> makeUser(rs), id);
+        User user = userCache.get(id, this::findUser);
+
+        if (user == null) {
+            userIds.recordFalsePositive();
+            throw new NotFoundException("Пользователь с ID: " + id + " не существует");
+        }
+
+        return user;
     }
 
     @Override
@@ -82,18 +154,19 @@ public class UserDbStorage implements UserStorage {
             String sqlQuery = "INSERT INTO users(email, login, user_name, birthday) " +
                     "VALUES (?, ?, ?, ?)";
 
+            PreparedStatementCreatorFactory factory = new PreparedStatementCreatorFactory(sqlQuery,
+                    Types.VARCHAR, Types.VARCHAR, Types.VARCHAR, Types.DATE);
+            factory.setGeneratedKeysColumnNames("user_id");
             KeyHolder keyHolder = new GeneratedKeyHolder();
 
-            jdbcTemplate.update(connection -> {
-                PreparedStatement stmt = connection.prepareStatement(sqlQuery, new String[]{"user_id"});
-                stmt.setString(1, user.getEmail());
-                stmt.setString(2, user.getLogin());
-                stmt.setString(3, user.getName());
-                stmt.setDate(4, Date.valueOf(user.getBirthday()));
-                return stmt;
-            }, keyHolder);
+            jdbcTemplate.update(factory.newPreparedStatementCreator(new Object[]{user.getEmail(), user.getLogin(),
+                    user.getName(), Date.valueOf(user.getBirthday())}), keyHolder);
+
+            Integer id = keyHolder.getKey().intValue();
+            userCache.invalidate(id);
+            userIds.add(id);
 
-            return keyHolder.getKey().intValue();
+            return id;
         } else {
             checkUserExists(user.getId());
 
@@ -105,63 +178,163 @@ public class UserDbStorage implements UserStorage {
                     user.getName(),
                     user.getBirthday(),
                     user.getId());
+            versions.userChanged(user.getId());
+            userCache.invalidate(user.getId());
 
             return user.getId();
         }
     }
 
+    //users - пользователи по индексам в пакетном запросе; email и login проверяются одним IN-запросом,
+    //пользователи вставляются одним пакетом с получением сгенерированных ID
     @Override
+    @Transactional
+    public List<BatchItemResult> addUsers(Map<Integer, User> users) {
+        List<String> emails = users.values().stream().map(User::getEmail).collect(Collectors.toList());
+        List<String> logins = users.values().stream().map(User::getLogin).collect(Collectors.toList());
+        Set<String> takenEmails = new HashSet<>();
+        Set<String> takenLogins = new HashSet<>();
+        for (int from = 0; from < emails.size(); from += MAX_IN_PARAMS) {
+            int to = Math.min(from + MAX_IN_PARAMS, emails.size());
+            String placeholders = String.join(", ", Collections.nCopies(to - from, "?"));
+            List<Object> params = new ArrayList<>(emails.subList(from, to));
+            params.addAll(logins.subList(from, to));
+            jdbcTemplate.query("SELECT email, login FROM users WHERE email IN (" + placeholders + ") " +
+                    "OR login IN (" + placeholders + ")", rs -> {
+                takenEmails.add(rs.getString("email"));
+                takenLogins.add(rs.getString("login"));
+            }, params.toArray());
+        }
+
+        List<BatchItemResult> results = new ArrayList<>(users.size());
+        List<User> inserted = new ArrayList<>(users.size());
+        List<Integer> insertedIndexes = new ArrayList<>(users.size());
+        users.forEach((index, user) -> {
+            if (takenEmails.contains(user.getEmail())) {
+                results.add(BatchItemResult.failed(index, HttpStatus.CONFLICT,
+                        "Пользователь с email: " + user.getEmail() + " уже существует"));
+            } else if (takenLogins.contains(user.getLogin())) {
+                results.add(BatchItemResult.failed(index, HttpStatus.CONFLICT,
+                        "Пользователь с login: " + user.getLogin() + " уже существует"));
+            } else {
+                checkUserName(user);
+                inserted.add(user);
+                insertedIndexes.add(index);
+            }
+        });
+
+        if (inserted.isEmpty()) {
+            return results;
+        }
+
+        String sqlQuery = "INSERT INTO users(email, login, user_name, birthday) " +
+                "VALUES (?, ?, ?, ?)";
+
+        PreparedStatementCreatorFactory factory = new PreparedStatementCreatorFactory(sqlQuery);
+        factory.setGeneratedKeysColumnNames("user_id");
+
+        int[] ids = jdbcTemplate.execute(factory.newPreparedStatementCreator(List.of()),
+                (PreparedStatementCallback<int[]>) stmt -> {
+                    for (User user : inserted) {
+                        stmt.setString(1, user.getEmail());
+                        stmt.setString(2, user.getLogin());
+                        stmt.setString(3, user.getName());
+                        stmt.setDate(4, Date.valueOf(user.getBirthday()));
+                        stmt.addBatch();
+                    }
+                    stmt.executeBatch();
+
+                    int[] keys = new int[inserted.size()];
+                    try (ResultSet rs = stmt.getGeneratedKeys()) {
+                        for (int i = 0; rs.next(); i++) {
+                            keys[i] = rs.getInt(1);
+                        }
+                    }
+                    return keys;
+                });
+
+        for (int i = 0; i < inserted.size(); i++) {
+            int id = ids[i];
+            inserted.get(i).setId(id);
+            AfterCommit.run(() -> userCache.invalidate(id));
+            userIds.add(id);
+            results.add(BatchItemResult.created(insertedIndexes.get(i), id));
+        }
+
+        results.sort(Comparator.comparingInt(BatchItemResult::getIndex));
+        return results;
+    }
+
+    //лайки пользователя удаляются каскадно; счетчики его фильмов уменьшаются после коммита, а likes_count
+    //пересчитает сверка
+    @Override
+    @Transactional
     public boolean deleteUser(Integer id) {
         checkUserExists(id);
+        List<Integer> likedFilms = jdbcTemplate.queryForList("SELECT film_id FROM likes WHERE user_id = ?",
+                Integer.class, id);
+        int[] followers = jdbcTemplate.queryForList("SELECT user_id FROM friends WHERE friend_id = ?",
+                Integer.class, id).stream().mapToInt(Integer::intValue).toArray();
         String sqlQuery = "DELETE FROM users WHERE user_id = ?";
-        return jdbcTemplate.update(sqlQuery, id) > 0;
+        boolean deleted = jdbcTemplate.update(sqlQuery, id) > 0;
+        if (deleted) {
+            AfterCommit.run(() -> {
+                friendGraph.removeUser(id, followers);
+                likesMatrix.removeUser(id);
+                likedFilms.forEach(filmId -> leaderboard.changeLikes(filmId, -1));
+                recommendationCache.invalidate(id);
+                userCache.invalidate(id);
+            });
+            versions.allUsersChanged();
+            versions.allFilmsChanged();
+            userIds.remove(id);
+        }
+        return deleted;
     }
 
     @Override
     public List<User> getUserFriends(Integer userId) {
         checkUserExists(userId);
-
-        String sql = "SELECT  u.user_id,\n" +
-                "       u.email,\n" +
-                "       u.login,\n" +
-                "       u.user_name,\n" +
-                "       u.birthday,\n" +
-                "       STRING_AGG (f.friend_id, ', ') AS friends\n" +
-                "FROM users AS u\n" +
-                "LEFT OUTER JOIN friends AS f ON u.user_id = f.user_id\n" +
-                "WHERE u.user_id IN (SELECT  friend_id AS user_id\n" +
-                "       FROM friends\n" +
-                "       WHERE user_id = ?)\n" +
-                "GROUP BY u.user_id\n" +
-                "ORDER BY u.user_id ASC;";
-
-        return jdbcTemplate.query(sql, (rs, rowNum) -> makeUser(rs), userId);
+        return findUsersByIds(friendGraph.getFriends(userId));
     }
 
+    //общие друзья находятся пересечением списков в графе дружбы, из БД читаются только найденные пользователи
     @Override
     public List<User> getCommonFriends(Integer firstId, Integer secondId) {
         checkUserExists(firstId);
         checkUserExists(secondId);
+        return findUsersByIds(friendGraph.getCommonFriends(firstId, secondId));
+    }
+
+    //кандидаты ранжируются в графе дружбы, из БД читаются только выбранные пользователи
+    @Override
+    public List<User> getSuggestions(Integer userId, Integer limit) {
+        checkUserExists(userId);
+
+        int[] ranked = friendGraph.getSuggestions(userId, limit, suggestUnconfirmed);
+        int[] sortedIds = ranked.clone();
+        Arrays.sort(sortedIds);
+        List<User> users = findUsersByIds(sortedIds);
 
-        String sql = "SELECT  u.user_id,\n" +
-                "       u.email,\n" +
-                "       u.login,\n" +
-                "       u.user_name,\n" +
-                "       u.birthday,\n" +
-                "       STRING_AGG (f.friend_id, ', ') AS friends\n" +
-                "FROM users AS u\n" +
-                "LEFT OUTER JOIN friends AS f ON u.user_id = f.user_id\n" +
-                "WHERE u.user_id IN (SELECT  f1.friend_id\n" +
-                "       FROM friends AS f1\n" +
-                "       INNER JOIN (SELECT friend_id FROM friends WHERE user_id = ?) AS f2 ON f1.friend_id = f2.friend_id\n" +
-                "       WHERE f1.user_id = ?)\n" +
-                "GROUP BY u.user_id\n" +
-                "ORDER BY u.user_id ASC;";
-
-        return jdbcTemplate.query(sql, (rs, rowNum) -> makeUser(rs), firstId, secondId);
+        User[] byId = new User[sortedIds.length];
+        for (User user : users) {
+            byId[Arrays.binarySearch(sortedIds, user.getId())] = user;
+        }
+
+        List<User> suggestions = new ArrayList<>(ranked.length);
+        for (int id : ranked) {
+            User user = byId[Arrays.binarySearch(sortedIds, id)];
+            if (user != null) {
+                suggestions.add(user);
+            }
+        }
+        return suggestions;
     }
 
+    //запрос и подтверждение дружбы меняют несколько строк FRIENDS в одной транзакции,
+    //граф друзей и кеш пользователя меняются после коммита
     @Override
+    @Transactional
     public ResponseDefault addFriend(Integer userId, Integer friendsId) {
         if (userId.equals(friendsId)) {
             throw new RuntimeException("Себя невозможно добавить в друзья ¯_(ツ)_/¯");
@@ -170,19 +343,14 @@ public class UserDbStorage implements UserStorage {
         checkUserExists(userId);
         checkUserExists(friendsId);
 
-        String sqlQuery = "SELECT friend_id FROM friends WHERE user_id = ? AND friend_id = ?";
-        String sqlInsert = "INSERT INTO friends (user_id, friend_id, status_id, last_update) " +
-                "VALUES (?, ?, ?, CURRENT_TIMESTAMP)";
         String sqlDelete = "DELETE FROM friends WHERE user_id = ? AND friend_id = ?";
 
-        if (jdbcTemplate.queryForRowSet(sqlQuery, userId, friendsId).next()) {
+        if (friendGraph.hasFriend(userId, friendsId)) {
             throw new AlreadyExistsException("Пользователи с ID: " + userId + " и ID: " + friendsId + " уже друзья");
-        } else if (!jdbcTemplate.queryForRowSet(sqlQuery, friendsId, userId).next()) {
-            boolean updateResult = jdbcTemplate.update(sqlInsert,
-                    userId,
-                    friendsId,
-                    NOT_CONFIRMED_FRIENDSHIP) > 0;
+        } else if (!friendGraph.hasFriend(friendsId, userId)) {
+            boolean updateResult = insertFriend(userId, friendsId, NOT_CONFIRMED_FRIENDSHIP);
             if (updateResult) {
+                friendsChanged(userId, friendsId, true);
                 String message = "Пользователь с ID: " + userId + " успешно отправил запрос на добавление в друзья" +
                         " пользователю с ID: " + friendsId + ", их дружба не подтверждена";
                 log.info(message);
@@ -191,16 +359,10 @@ public class UserDbStorage implements UserStorage {
                 throw new AlreadyExistsException("Ошибка при обработке запроса добавления в друзья");
             }
         } else if (jdbcTemplate.update(sqlDelete, friendsId, userId) > 0) {
-            boolean updateResultUser = jdbcTemplate.update(sqlInsert,
-                    userId,
-                    friendsId,
-                    CONFIRMED_FRIENDSHIP) > 0;
-
-            boolean updateResultFriend = jdbcTemplate.update(sqlInsert,
-                    friendsId,
-                    userId,
-                    CONFIRMED_FRIENDSHIP) > 0;
+            boolean updateResultUser = insertFriend(userId, friendsId, CONFIRMED_FRIENDSHIP);
+            boolean updateResultFriend = insertFriend(friendsId, userId, CONFIRMED_FRIENDSHIP);
             if (updateResultUser && updateResultFriend) {
+                friendsChanged(userId, friendsId, true);
                 String message = "Пользователь с ID: " + userId + " успешно добавил в друзья пользователя с ID: "
                         + friendsId + ", теперь их дружба подтверждена";
                 log.info(message);
@@ -213,7 +375,19 @@ public class UserDbStorage implements UserStorage {
         }
     }
 
+    //граф друзей меняется только после коммита, поэтому одновременный такой же запрос мог уже вставить строку:
+    //первичный ключ FRIENDS отклоняет повтор, и он сообщается так же, как дружба, уже известная графу
+    private boolean insertFriend(Integer userId, Integer friendsId, Integer statusId) {
+        try {
+            return jdbcTemplate.update("INSERT INTO friends (user_id, friend_id, status_id, last_update) " +
+                    "VALUES (?, ?, ?, CURRENT_TIMESTAMP)", userId, friendsId, statusId) > 0;
+        } catch (DuplicateKeyException e) {
+            throw new AlreadyExistsException("Пользователи с ID: " + userId + " и ID: " + friendsId + " уже друзья");
+        }
+    }
+
     @Override
+    @Transactional
     public ResponseDefault removeFriend(Integer userId, Integer friendsId) {
         if (userId.equals(friendsId)) {
             throw new RuntimeException("Всё! Я сам себе не друг! :(");
@@ -221,17 +395,17 @@ public class UserDbStorage implements UserStorage {
         checkUserExists(userId);
         checkUserExists(friendsId);
 
-        String sqlQuery = "SELECT friend_id FROM friends WHERE user_id = ? AND friend_id = ?";
         String sqlInsert = "INSERT INTO friends (user_id, friend_id, status_id, last_update) " +
                 "VALUES (?, ?, ?, CURRENT_TIMESTAMP)";
         String sqlDelete = "DELETE FROM friends WHERE user_id = ? AND friend_id = ?";
 
-        if (!jdbcTemplate.queryForRowSet(sqlQuery, userId, friendsId).next()) {
+        if (!friendGraph.hasFriend(userId, friendsId)) {
             throw new NotFoundException("Пользователи с ID: " + userId + " и ID: " + friendsId
                     + " не являются друзьями");
-        } else if (!jdbcTemplate.queryForRowSet(sqlQuery, friendsId, userId).next()) {
+        } else if (!friendGraph.hasFriend(friendsId, userId)) {
             boolean updateResult = jdbcTemplate.update(sqlDelete, userId, friendsId) > 0;
             if (updateResult) {
+                friendsChanged(userId, friendsId, false);
                 String message = "Пользователь с ID: " + userId + " успешно отозвал запрос на добавление в друзья " +
                         "пользователю с ID: " + friendsId;
                 log.info(message);
@@ -247,6 +421,7 @@ public class UserDbStorage implements UserStorage {
                     userId,
                     NOT_CONFIRMED_FRIENDSHIP) > 0;
             if (updateResultUser && updateResultFriend) {
+                friendsChanged(userId, friendsId, false);
                 String message = "Пользователь с ID: " + userId + " успешно удалил из друзей пользователя с ID: "
                         + friendsId;
                 log.info(message);
@@ -259,23 +434,48 @@ public class UserDbStorage implements UserStorage {
         }
     }
 
+    private void friendsChanged(Integer userId, Integer friendsId, boolean added) {
+        AfterCommit.run(() -> {
+            if (added) {
+                friendGraph.addFriend(userId, friendsId);
+            } else {
+                friendGraph.removeFriend(userId, friendsId);
+            }
+            userCache.invalidate(userId);
+        });
+        versions.userChanged(userId);
+    }
+
+    //пользователи возвращаются в порядке переданных ID (по возрастанию)
+    private List<User> findUsersByIds(int[] ids) {
+        List<User> users = new ArrayList<>(ids.length);
+        for (int from = 0; from < ids.length; from += MAX_IN_PARAMS) {
+            int to = Math.min(from + MAX_IN_PARAMS, ids.length);
+            users.addAll(jdbcTemplate.query(USERS_SQL + "WHERE u.user_id IN ("
+                            + String.join(", ", Collections.nCopies(to - from, "?")) + ")\nORDER BY u.user_id ASC",
+                    (rs, rowNum) -> makeUser(rs), Arrays.stream(ids, from, to).boxed().toArray()));
+        }
+        return users;
+    }
+
     private User makeUser(ResultSet rs) throws SQLException {
-        System.out.println(rs);
         Integer id = rs.getInt("user_id");
         String email = rs.getString("email");
         String login = rs.getString("login");
         String name = rs.getString("user_name");
         LocalDate birthday = rs.getDate("birthday").toLocalDate();
-        Set<Long> friends = ((rs.getString("friends") == null)) ? new TreeSet<>() :
-                Stream.of(rs.getString("friends").split(", ")).map(Long::parseLong).collect(Collectors.toSet());
+        IdSet friends = IdSet.of(friendGraph.getFriends(id));
 
         return new User(id, email, login, name, birthday, friends);
     }
 
     private void checkUserExists(Integer id) {
-        if (!jdbcTemplate.queryForRowSet("SELECT user_id FROM users WHERE user_id = ?", id).next()) {
-            throw new NotFoundException("Пользователь с ID: " + id + " не существует");
-        }
+        getUser(id);
+    }
+
+    private User findUser(Integer id) {
+        List<User> users = jdbcTemplate.query(USERS_SQL + "WHERE u.user_id = ?", (rs, rowNum) -> makeUser(rs), id);
+        return users.isEmpty() ? null : users.get(0);
     }
 
     private void checkUserMailAndLogin(User user) {
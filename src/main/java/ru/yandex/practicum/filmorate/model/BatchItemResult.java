@@ -0,0 +1,33 @@
+package ru.yandex.practicum.filmorate.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Getter;
+import lombok.ToString;
+import org.springframework.http.HttpStatus;
+
+//класс BatchItemResult - результат обработки одного элемента пакетного запроса:
+//index - позиция элемента в запросе, id - ID созданной записи или описание ошибки в message
+@ToString
+@Getter
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BatchItemResult {
+    private final int index;
+    private final Integer id;
+    private final HttpStatus status;
+    private final String message;
+
+    private BatchItemResult(int index, Integer id, HttpStatus status, String message) {
+        this.index = index;
+        this.id = id;
+        this.status = status;
+        this.message = message;
+    }
+
+    public static BatchItemResult created(int index, Integer id) {
+        return new BatchItemResult(index, id, HttpStatus.CREATED, null);
+    }
+
+    public static BatchItemResult failed(int index, HttpStatus status, String message) {
+        return new BatchItemResult(index, null, status, message);
+    }
+}
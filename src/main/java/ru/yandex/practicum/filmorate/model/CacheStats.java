@@ -0,0 +1,18 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+
+//класс CacheStats - счетчики кеша с момента запуска приложения
+@ToString
+@Getter
+@Builder
+public class CacheStats {
+    private final int size;
+    private final int capacity;
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+    private final double hitRate;
+}
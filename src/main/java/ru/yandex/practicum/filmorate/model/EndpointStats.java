@@ -0,0 +1,26 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.Map;
+
+//класс EndpointStats - счетчики эндпоинта с момента запуска приложения: ошибки - ответы 4xx и 5xx,
+//частоты - среднее в секунду за последнюю минуту, statuses - разбивка по HTTP-статусам ответа
+@ToString
+@Getter
+@Builder
+public class EndpointStats {
+    private final String endpoint;
+    private final long requests;
+    private final long errors;
+    private final double errorRate;
+    private final double requestsPerSecond;
+    private final double errorsPerSecond;
+    private final double p50Ms;
+    private final double p99Ms;
+    private final double p999Ms;
+    private final double maxMs;
+    private final Map<String, LatencyStats> statuses;
+}
@@ -1,5 +1,6 @@
 package ru.yandex.practicum.filmorate.model;
 
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import lombok.Builder;
 import lombok.Data;
 import ru.yandex.practicum.filmorate.validators.ReleaseValidation;
@@ -31,10 +32,13 @@ public class Film {
 
     private Set<Genre> genres;
 
-    private Set<Long> likes;
+    @JsonDeserialize(as = IdSet.class)
+    private Set<Integer> likes;
+
+    private Integer likesAmount;
 
     public Film(Integer id, String name, String description, LocalDate releaseDate, Integer duration, Mpa mpa,
-                Set<Genre> genres, Set<Long> likes) {
+                Set<Genre> genres, Set<Integer> likes, Integer likesAmount) {
         this.id = id;
         this.name = name;
         this.description = description;
@@ -43,9 +47,14 @@ public class Film {
         this.mpa = mpa;
         this.genres = genres;
         this.likes = likes;
+        this.likesAmount = likesAmount;
     }
 
+    //количество лайков по счетчику FilmLikeCounters, а если его не заполнили - по загруженным лайкам
     public Integer getLikesAmount() {
+        if (likesAmount != null) {
+            return likesAmount;
+        }
         return (likes == null) ? null : likes.size();
     }
 }
\ No newline at end of file
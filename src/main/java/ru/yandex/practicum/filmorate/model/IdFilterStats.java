@@ -0,0 +1,24 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+
+//класс IdFilterStats - состояние фильтра ID и счетчики проверок с момента запуска приложения;
+//observedFalsePositiveRate - доля отсутствующих ID, которые фильтр пропустил в базу
+@ToString
+@Getter
+@Builder
+public class IdFilterStats {
+    private final int capacity;
+    private final long bits;
+    private final int hashFunctions;
+    private final int insertions;
+    private final int deletesSinceRebuild;
+    private final long rebuilds;
+    private final long checks;
+    private final long rejected;
+    private final long falsePositives;
+    private final double expectedFalsePositiveRate;
+    private final double observedFalsePositiveRate;
+}
@@ -0,0 +1,172 @@
+package ru.yandex.practicum.filmorate.model;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.IntConsumer;
+
+//класс IdSet - компактное отсортированное множество ID на примитивном массиве int (4 байта на элемент),
+//в JSON сериализуется обычным массивом чисел, как и любой Set<Integer>
+@JsonSerialize(using = IdSet.Serializer.class)
+public class IdSet extends AbstractSet<Integer> {
+    private static final int[] EMPTY = new int[0];
+
+    private int[] ids;
+    private int size;
+
+    public IdSet() {
+        this.ids = EMPTY;
+    }
+
+    public IdSet(int capacity) {
+        this.ids = (capacity == 0) ? EMPTY : new int[capacity];
+    }
+
+    public static IdSet of(int... values) {
+        IdSet set = new IdSet(values.length);
+        for (int value : values) {
+            set.add(value);
+        }
+        return set;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return (o instanceof Integer) && containsInt((Integer) o);
+    }
+
+    public boolean containsInt(int id) {
+        return Arrays.binarySearch(ids, 0, size, id) >= 0;
+    }
+
+    @Override
+    public boolean add(Integer id) {
+        return addInt(id);
+    }
+
+    //добавление ID по возрастанию (как при чтении из БД с ORDER BY) выполняется за O(1)
+    public boolean addInt(int id) {
+        if (size > 0 && ids[size - 1] >= id) {
+            int position = Arrays.binarySearch(ids, 0, size, id);
+            if (position >= 0) {
+                return false;
+            }
+            insertAt(-position - 1, id);
+        } else {
+            insertAt(size, id);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        return (o instanceof Integer) && removeInt((Integer) o);
+    }
+
+    public boolean removeInt(int id) {
+        int position = Arrays.binarySearch(ids, 0, size, id);
+        if (position < 0) {
+            return false;
+        }
+        System.arraycopy(ids, position + 1, ids, position, size - position - 1);
+        size--;
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        size = 0;
+    }
+
+    public void forEachInt(IntConsumer action) {
+        for (int i = 0; i < size; i++) {
+            action.accept(ids[i]);
+        }
+    }
+
+    public int[] toIntArray() {
+        return Arrays.copyOf(ids, size);
+    }
+
+    @Override
+    public Iterator<Integer> iterator() {
+        return new Iterator<>() {
+            private int cursor;
+            private boolean canRemove;
+
+            @Override
+            public boolean hasNext() {
+                return cursor < size;
+            }
+
+            @Override
+            public Integer next() {
+                if (cursor >= size) {
+                    throw new NoSuchElementException();
+                }
+                canRemove = true;
+                return ids[cursor++];
+            }
+
+            @Override
+            public void remove() {
+                if (!canRemove) {
+                    throw new IllegalStateException();
+                }
+                removeInt(ids[--cursor]);
+                canRemove = false;
+            }
+        };
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o instanceof IdSet) {
+            IdSet other = (IdSet) o;
+            return Arrays.equals(ids, 0, size, other.ids, 0, other.size);
+        }
+        return (o instanceof Set) && super.equals(o);
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 0;
+        for (int i = 0; i < size; i++) {
+            hash += ids[i];
+        }
+        return hash;
+    }
+
+    private void insertAt(int position, int id) {
+        if (size == ids.length) {
+            ids = Arrays.copyOf(ids, Math.max(4, size + (size >> 1)));
+        }
+        System.arraycopy(ids, position, ids, position + 1, size - position);
+        ids[position] = id;
+        size++;
+    }
+
+    public static class Serializer extends StdSerializer<IdSet> {
+        public Serializer() {
+            super(IdSet.class);
+        }
+
+        @Override
+        public void serialize(IdSet value, JsonGenerator gen, SerializerProvider provider) throws IOException {
+            gen.writeArray(value.ids, 0, value.size);
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.List;
+
+//класс ImportReport - итог задания импорта: rowsSkipped - строки, записанные ранее и пропущенные
+//по контрольной точке, errors - первые ошибки с номерами строк входных данных
+@ToString
+@Getter
+@Builder
+public class ImportReport {
+    private final String jobId;
+    private final String entity;
+    private final long rowsRead;
+    private final long rowsSkipped;
+    private final long rowsImported;
+    private final long rowsRejected;
+    private final long elapsedMs;
+    private final long rowsPerSecond;
+    private final List<String> errors;
+}
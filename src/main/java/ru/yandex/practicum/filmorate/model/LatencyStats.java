@@ -0,0 +1,17 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+
+//класс LatencyStats - число ответов одного эндпоинта с одним HTTP-статусом и перцентили их времени
+@ToString
+@Getter
+@Builder
+public class LatencyStats {
+    private final long requests;
+    private final double p50Ms;
+    private final double p99Ms;
+    private final double p999Ms;
+    private final double maxMs;
+}
@@ -0,0 +1,27 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.Map;
+
+//класс QueryStats - счетчики одного SQL-запроса с момента запуска приложения;
+//histogramMs - число выполнений по верхним границам интервалов времени в мс, перцентили оценены по ним же
+@ToString
+@Getter
+@Builder
+public class QueryStats {
+    private final String name;
+    private final String sql;
+    private final long calls;
+    private final long errors;
+    private final long rows;
+    private final double totalMs;
+    private final double meanMs;
+    private final double maxMs;
+    private final double p50Ms;
+    private final double p95Ms;
+    private final double p99Ms;
+    private final Map<String, Long> histogramMs;
+}
@@ -1,5 +1,6 @@
 package ru.yandex.practicum.filmorate.model;
 
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import lombok.Builder;
 import lombok.Data;
 
@@ -28,9 +29,10 @@ public class User {
     @Past(message = "День рождения не может быть в будущем")
     private LocalDate birthday;
 
-    private Set<Long> friends;
+    @JsonDeserialize(as = IdSet.class)
+    private Set<Integer> friends;
 
-    public User(Integer id, String email, String login, String name, LocalDate birthday, Set<Long> friends) {
+    public User(Integer id, String email, String login, String name, LocalDate birthday, Set<Integer> friends) {
         this.id = id;
         this.email = email;
         this.login = login;
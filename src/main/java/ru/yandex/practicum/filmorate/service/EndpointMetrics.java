@@ -0,0 +1,114 @@
+package ru.yandex.practicum.filmorate.service;
+
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.EndpointStats;
+import ru.yandex.practicum.filmorate.model.LatencyStats;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.Collectors;
+
+//класс EndpointMetrics - время ответа, частота запросов и ошибок по эндпоинтам вида "GET /films/{id}",
+//с разбивкой по HTTP-статусу, который выставил ValidationExceptionHandler или контроллер
+@Component
+public class EndpointMetrics {
+    private static final int RATE_WINDOW_SECONDS = 60;
+
+    private final Map<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+
+    public void record(String endpoint, int status, long nanos) {
+        endpoints.computeIfAbsent(endpoint, name -> new Endpoint())
+                .record(status, TimeUnit.NANOSECONDS.toMicros(nanos), System.currentTimeMillis() / 1_000);
+    }
+
+    public List<EndpointStats> getStats() {
+        long now = System.currentTimeMillis() / 1_000;
+        return endpoints.entrySet().stream()
+                .map(entry -> entry.getValue().getStats(entry.getKey(), now))
+                .sorted(Comparator.comparing(EndpointStats::getEndpoint))
+                .collect(Collectors.toList());
+    }
+
+    private static double toMs(long micros) {
+        return micros / 1_000.0;
+    }
+
+    private static final class Endpoint {
+        private final Map<Integer, LatencyHistogram> statuses = new ConcurrentHashMap<>();
+        private final RateWindow requests = new RateWindow();
+        private final RateWindow errors = new RateWindow();
+
+        private void record(int status, long micros, long second) {
+            statuses.computeIfAbsent(status, code -> new LatencyHistogram()).record(micros);
+            requests.increment(second);
+            if (status >= 400) {
+                errors.increment(second);
+            }
+        }
+
+        private EndpointStats getStats(String endpoint, long now) {
+            Map<String, LatencyStats> byStatus = new TreeMap<>();
+            long requestCount = 0;
+            long errorCount = 0;
+            long max = 0;
+            for (Map.Entry<Integer, LatencyHistogram> entry : new TreeMap<>(statuses).entrySet()) {
+                LatencyHistogram histogram = entry.getValue();
+                requestCount += histogram.getCount();
+                errorCount += (entry.getKey() >= 400) ? histogram.getCount() : 0;
+                max = Math.max(max, histogram.getMaxMicros());
+                byStatus.put(String.valueOf(entry.getKey()), LatencyStats.builder()
+                        .requests(histogram.getCount())
+                        .p50Ms(toMs(histogram.percentile(0.5)))
+                        .p99Ms(toMs(histogram.percentile(0.99)))
+                        .p999Ms(toMs(histogram.percentile(0.999)))
+                        .maxMs(toMs(histogram.getMaxMicros()))
+                        .build());
+            }
+
+            return EndpointStats.builder()
+                    .endpoint(endpoint)
+                    .requests(requestCount)
+                    .errors(errorCount)
+                    .errorRate(requestCount == 0 ? 0 : (double) errorCount / requestCount)
+                    .requestsPerSecond(requests.perSecond(now))
+                    .errorsPerSecond(errors.perSecond(now))
+                    .p50Ms(toMs(LatencyHistogram.percentile(statuses.values(), 0.5)))
+                    .p99Ms(toMs(LatencyHistogram.percentile(statuses.values(), 0.99)))
+                    .p999Ms(toMs(LatencyHistogram.percentile(statuses.values(), 0.999)))
+                    .maxMs(toMs(max))
+                    .statuses(byStatus)
+                    .build();
+        }
+    }
+
+    //счетчики по секундам в кольце на RATE_WINDOW_SECONDS; ячейка обнуляется первым запросом новой секунды,
+    //поэтому одновременный с обнулением запрос может потеряться - для оценки частоты это допустимо
+    private static final class RateWindow {
+        private final AtomicLongArray seconds = new AtomicLongArray(RATE_WINDOW_SECONDS);
+        private final AtomicLongArray counts = new AtomicLongArray(RATE_WINDOW_SECONDS);
+
+        private void increment(long second) {
+            int slot = (int) (second % RATE_WINDOW_SECONDS);
+            long stamp = seconds.get(slot);
+            if (stamp != second && seconds.compareAndSet(slot, stamp, second)) {
+                counts.set(slot, 0);
+            }
+            counts.incrementAndGet(slot);
+        }
+
+        private double perSecond(long now) {
+            long total = 0;
+            for (int slot = 0; slot < RATE_WINDOW_SECONDS; slot++) {
+                if (now - seconds.get(slot) < RATE_WINDOW_SECONDS) {
+                    total += counts.get(slot);
+                }
+            }
+            return (double) total / RATE_WINDOW_SECONDS;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package ru.yandex.practicum.filmorate.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.dao.ExportDao;
+import ru.yandex.practicum.filmorate.storage.SnapshotTransaction;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+
+//класс ExportService пишет снимок всей базы в NDJSON: первая строка - заголовок с версией формата,
+//дальше по строке на запись каждой таблицы с полем type; все таблицы читаются в одной транзакции
+//SNAPSHOT только для чтения, поэтому лайки и связи дружбы в снимке ссылаются только на выгруженные записи
+@Slf4j
+@Service
+public class ExportService {
+    private static final int FORMAT_VERSION = 1;
+
+    private final ExportDao exportDao;
+    private final ObjectMapper objectMapper;
+    private final SnapshotTransaction snapshotTransaction;
+
+    public ExportService(ExportDao exportDao, ObjectMapper objectMapper, SnapshotTransaction snapshotTransaction) {
+        this.exportDao = exportDao;
+        this.objectMapper = objectMapper;
+        this.snapshotTransaction = snapshotTransaction;
+    }
+
+    public void exportSnapshot(OutputStream outputStream) {
+        log.info("Запуск выгрузки снимка базы данных");
+        long started = System.nanoTime();
+        long[] rows = new long[1];
+
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.setRootValueSeparator(null);
+
+            generator.writeStartObject();
+            generator.writeStringField("type", "snapshot");
+            generator.writeNumberField("version", FORMAT_VERSION);
+            generator.writeObjectField("createdAt", LocalDateTime.now());
+            generator.writeEndObject();
+            generator.writeRaw('\n');
+
+            snapshotTransaction.run(() -> exportDao.streamSnapshot((type, columns, values) -> {
+                try {
+                    generator.writeStartObject();
+                    generator.writeStringField("type", type);
+                    for (int i = 0; i < columns.length; i++) {
+                        generator.writeObjectField(columns[i], values[i]);
+                    }
+                    generator.writeEndObject();
+                    generator.writeRaw('\n');
+                    rows[0]++;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        log.info("Снимок базы данных выгружен, записей: " + rows[0] + ", за "
+                + (System.nanoTime() - started) / 1_000_000 + " мс");
+    }
+}
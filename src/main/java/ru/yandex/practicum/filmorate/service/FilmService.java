@@ -6,26 +6,68 @@ import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.Constants;
 import ru.yandex.practicum.filmorate.exception.AlreadyExistsException;
+import ru.yandex.practicum.filmorate.model.BatchItemResult;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.storage.EntityVersions;
 import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
 
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
 
 @Slf4j
 @Service
 public class FilmService {
     private final FilmStorage filmStorage;
+    private final Validator validator;
+    private final EntityVersions versions;
 
     @Autowired
-    public FilmService(FilmStorage filmStorage) {
+    public FilmService(FilmStorage filmStorage, Validator validator, EntityVersions versions) {
         this.filmStorage = filmStorage;
+        this.validator = validator;
+        this.versions = versions;
     }
 
     public List<Film> getFilms() {
         log.info("Запрос списка всех фильмов");
-        return new ArrayList<>(filmStorage.getFilms().values());
+
+        List<Film> films = new ArrayList<>();
+        List<Film> page;
+        Integer after = 0;
+        do {
+            page = filmStorage.getFilms(after, Constants.MAX_PAGE_SIZE);
+            films.addAll(page);
+            if (!page.isEmpty()) {
+                after = page.get(page.size() - 1).getId();
+            }
+        } while (page.size() == Constants.MAX_PAGE_SIZE);
+
+        return films;
+    }
+
+    public List<Film> getFilms(Integer after, Integer limit) {
+        after = (after == null) ? 0 : after;
+        limit = (limit == null) ? Constants.DEFAULT_PAGE_SIZE : limit;
+        if (limit <= 0 || limit > Constants.MAX_PAGE_SIZE) {
+            throw new RuntimeException("Размер страницы должен быть от 1 до " + Constants.MAX_PAGE_SIZE);
+        }
+
+        log.info("Запрос " + limit + " фильмов после ID: " + after);
+        return filmStorage.getFilms(after, limit);
+    }
+
+    public void streamFilms(Consumer<Film> consumer) {
+        log.info("Потоковая выгрузка всех фильмов");
+        filmStorage.streamFilms(consumer);
     }
 
     public Film getFilm(Integer id) {
@@ -37,6 +79,10 @@ public class FilmService {
         }
     }
 
+    public String getFilmTag(Integer id) {
+        return versions.filmTag(id);
+    }
+
     public Film addFilm(Film film) {
         Integer id = filmStorage.putFilm(film);
         try {
@@ -48,6 +94,39 @@ public class FilmService {
         }
     }
 
+    //весь пакет проверяется до записи: ошибочные элементы и повторы названий внутри пакета получают свой результат,
+    //остальные сохраняются одной транзакцией
+    public List<BatchItemResult> addFilms(List<Film> films) {
+        if (films == null || films.isEmpty() || films.size() > Constants.MAX_BATCH_SIZE) {
+            throw new RuntimeException("Размер пакета должен быть от 1 до " + Constants.MAX_BATCH_SIZE);
+        }
+
+        List<BatchItemResult> results = new ArrayList<>(films.size());
+        Map<Integer, Film> valid = new LinkedHashMap<>();
+        Set<String> names = new HashSet<>();
+        for (int i = 0; i < films.size(); i++) {
+            Film film = films.get(i);
+            String error = validate(film);
+            if (error != null) {
+                results.add(BatchItemResult.failed(i, HttpStatus.BAD_REQUEST, error));
+            } else if (!names.add(film.getName())) {
+                results.add(BatchItemResult.failed(i, HttpStatus.CONFLICT,
+                        "Фильм " + film.getName() + " повторяется в запросе"));
+            } else {
+                valid.put(i, film);
+            }
+        }
+
+        if (!valid.isEmpty()) {
+            results.addAll(filmStorage.addFilms(valid));
+            results.sort(Comparator.comparingInt(BatchItemResult::getIndex));
+        }
+
+        log.info("Пакетное добавление фильмов: получено " + films.size() + ", добавлено "
+                + results.stream().filter(result -> result.getId() != null).count());
+        return results;
+    }
+
     public Film updateFilm(Film film) {
         if (film.getId() == null) {
             throw new RuntimeException("Переданные параметры фильма не содержат ID");
@@ -87,4 +166,42 @@ public class FilmService {
         log.info("Запрос " + count + " самых популярных фильмов");
         return filmStorage.getPopular(count);
     }
-}
\ No newline at end of file
+
+    public List<Film> getSimilar(Integer filmId, Integer limit) {
+        if (limit <= 0 || limit > Constants.MAX_PAGE_SIZE) {
+            throw new RuntimeException("Количество рекомендаций должно быть от 1 до " + Constants.MAX_PAGE_SIZE);
+        }
+
+        log.info("Запрос " + limit + " фильмов, похожих на фильм с ID: " + filmId);
+        return filmStorage.getSimilar(filmId, limit);
+    }
+
+    public List<Film> getRecommendations(Integer userId, Integer limit) {
+        if (limit <= 0 || limit > Constants.MAX_PAGE_SIZE) {
+            throw new RuntimeException("Количество рекомендаций должно быть от 1 до " + Constants.MAX_PAGE_SIZE);
+        }
+
+        log.info("Запрос " + limit + " рекомендованных фильмов для пользователя с ID: " + userId);
+        return filmStorage.getRecommendations(userId, limit);
+    }
+
+    String validate(Film film) {
+        if (film == null) {
+            return "Переданы пустые параметры фильма";
+        }
+
+        String violation = validator.validate(film).stream()
+                .sorted(Comparator.comparing(v -> v.getPropertyPath().toString()))
+                .map(ConstraintViolation::getMessage)
+                .findFirst()
+                .orElse(null);
+        if (violation != null) {
+            return violation;
+        }
+
+        if (film.getDescription() == null || film.getReleaseDate() == null || film.getDuration() == null) {
+            return "Не указаны описание, дата релиза или продолжительность фильма";
+        }
+        return null;
+    }
+}
@@ -5,6 +5,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.dao.GenreDao;
 import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.storage.EntityVersions;
 
 import java.util.List;
 
@@ -12,10 +13,16 @@ import java.util.List;
 @Service
 public class GenreService {
     private final GenreDao genreDao;
+    private final EntityVersions versions;
 
     @Autowired
-    public GenreService(GenreDao genreDao) {
+    public GenreService(GenreDao genreDao, EntityVersions versions) {
         this.genreDao = genreDao;
+        this.versions = versions;
+    }
+
+    public String getTag() {
+        return versions.referenceTag("g");
     }
 
     public List<Genre> getAllGenre() {
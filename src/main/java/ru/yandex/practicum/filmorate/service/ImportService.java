@@ -0,0 +1,391 @@
+package ru.yandex.practicum.filmorate.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.filmorate.dao.ImportDao;
+import ru.yandex.practicum.filmorate.model.BatchItemResult;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.ImportReport;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.user.UserStorage;
+
+import javax.annotation.PreDestroy;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+//класс ImportService загружает большие наборы фильмов, пользователей, лайков и связей дружбы из NDJSON или CSV:
+//поток запроса делит вход на части по chunkSize строк, части разбираются и проверяются параллельно,
+//а записываются по порядку - каждая одной транзакцией вместе с контрольной точкой задания;
+//в обработке одновременно не больше 2 * threads частей, поэтому память не зависит от объема входных данных
+@Slf4j
+@Service
+public class ImportService {
+    private static final int MAX_ERRORS = 100;
+    private static final int LOG_EVERY_CHUNKS = 20;
+
+    private final FilmService filmService;
+    private final UserService userService;
+    private final FilmStorage filmStorage;
+    private final UserStorage userStorage;
+    private final ImportDao importDao;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final ExecutorService validators;
+    private final int chunkSize;
+    private final int maxInFlight;
+
+    public ImportService(FilmService filmService, UserService userService, FilmStorage filmStorage,
+                         UserStorage userStorage, ImportDao importDao, ObjectMapper objectMapper,
+                         TransactionTemplate transactionTemplate,
+                         @Value("${filmorate.import.chunk-size:5000}") int chunkSize,
+                         @Value("${filmorate.import.threads:4}") int threads) {
+        this.filmService = filmService;
+        this.userService = userService;
+        this.filmStorage = filmStorage;
+        this.userStorage = userStorage;
+        this.importDao = importDao;
+        this.objectMapper = objectMapper;
+        this.transactionTemplate = transactionTemplate;
+        this.chunkSize = chunkSize;
+        this.maxInFlight = threads * 2;
+        this.validators = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "import-validator");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        validators.shutdownNow();
+    }
+
+    //jobId - необязательный ID задания: при повторном запуске с тем же ID уже записанные строки пропускаются
+    public ImportReport importData(String entityName, boolean csv, String jobId, InputStream input) {
+        Entity entity = Entity.of(entityName);
+        String job = (jobId == null || jobId.isBlank()) ? null : jobId;
+        long skip = (job == null) ? 0 : importDao.getCheckpoint(job, entity.name());
+        log.info("Запуск импорта " + entity + ((job == null) ? "" : ", задание: " + job + ", пропуск строк: " + skip));
+
+        Progress progress = new Progress(job);
+        Deque<Future<Chunk>> inFlight = new ArrayDeque<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8))) {
+            boolean header = csv;
+            long row = 0;
+            long firstRow = 0;
+            List<String> lines = new ArrayList<>(chunkSize);
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                if (header) {
+                    header = false;
+                    continue;
+                }
+                if (++row <= skip) {
+                    continue;
+                }
+                if (lines.isEmpty()) {
+                    firstRow = row;
+                }
+                lines.add(line);
+                if (lines.size() == chunkSize) {
+                    submit(inFlight, progress, entity, csv, firstRow, lines);
+                    lines = new ArrayList<>(chunkSize);
+                }
+            }
+            if (!lines.isEmpty()) {
+                submit(inFlight, progress, entity, csv, firstRow, lines);
+            }
+            while (!inFlight.isEmpty()) {
+                write(progress, await(inFlight.poll()));
+            }
+            progress.skipped = Math.min(skip, row);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            inFlight.forEach(future -> future.cancel(true));
+            if (progress.imported > 0) {
+                reload(entity);
+            }
+        }
+
+        long elapsedNanos = Math.max(System.nanoTime() - progress.started, 1);
+        ImportReport report = ImportReport.builder()
+                .jobId(job)
+                .entity(entity.name())
+                .rowsRead(progress.read)
+                .rowsSkipped(progress.skipped)
+                .rowsImported(progress.imported)
+                .rowsRejected(progress.rejected)
+                .elapsedMs(elapsedNanos / 1_000_000)
+                .rowsPerSecond(progress.read * 1_000_000_000L / elapsedNanos)
+                .errors(progress.errors)
+                .build();
+        log.info("Импорт " + entity + " завершен: прочитано " + report.getRowsRead() + ", записано "
+                + report.getRowsImported() + ", отклонено " + report.getRowsRejected() + ", "
+                + report.getRowsPerSecond() + " строк/с");
+        return report;
+    }
+
+    //если в обработке уже maxInFlight частей, сначала записывается самая ранняя из них
+    private void submit(Deque<Future<Chunk>> inFlight, Progress progress, Entity entity, boolean csv,
+                        long firstRow, List<String> lines) {
+        if (inFlight.size() >= maxInFlight) {
+            write(progress, await(inFlight.poll()));
+        }
+        inFlight.add(validators.submit(() -> parse(entity, csv, firstRow, lines)));
+    }
+
+    private Chunk await(Future<Chunk> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Импорт прерван");
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Ошибка разбора данных импорта", e.getCause());
+        }
+    }
+
+    private void write(Progress progress, Chunk chunk) {
+        Integer imported = transactionTemplate.execute(status -> {
+            int rows;
+            if (chunk.entity == Entity.FILMS) {
+                rows = collect(chunk, chunk.films.isEmpty() ? List.of() : filmStorage.addFilms(chunk.films));
+            } else if (chunk.entity == Entity.USERS) {
+                rows = collect(chunk, chunk.users.isEmpty() ? List.of() : userStorage.addUsers(chunk.users));
+            } else if (chunk.entity == Entity.LIKES) {
+                rows = chunk.links.isEmpty() ? 0 : importDao.importLikes(chunk.links);
+            } else {
+                rows = chunk.links.isEmpty() ? 0 : importDao.importFriends(chunk.links);
+            }
+
+            if (progress.job != null) {
+                importDao.saveCheckpoint(progress.job, chunk.entity.name(), chunk.lastRow);
+            }
+            return rows;
+        });
+
+        progress.read += chunk.size;
+        progress.imported += imported;
+        progress.rejected += chunk.size - imported;
+        chunk.errors.stream()
+                .limit(Math.max(MAX_ERRORS - progress.errors.size(), 0))
+                .forEach(progress.errors::add);
+        if (++progress.chunks % LOG_EVERY_CHUNKS == 0) {
+            long elapsedNanos = Math.max(System.nanoTime() - progress.started, 1);
+            log.info("Импорт " + chunk.entity + ": обработано " + progress.read + " строк, "
+                    + progress.read * 1_000_000_000L / elapsedNanos + " строк/с");
+        }
+    }
+
+    private int collect(Chunk chunk, List<BatchItemResult> results) {
+        int created = 0;
+        for (BatchItemResult result : results) {
+            if (result.getStatus() == HttpStatus.CREATED) {
+                created++;
+            } else {
+                chunk.errors.add("Строка " + result.getIndex() + ": " + result.getMessage());
+            }
+        }
+        return created;
+    }
+
+    //вызывается в потоках проверки: разбор строк части, проверка полей и повторов внутри части
+    private Chunk parse(Entity entity, boolean csv, long firstRow, List<String> lines) {
+        Chunk chunk = new Chunk(entity, firstRow + lines.size() - 1, lines.size());
+        Set<String> keys = new HashSet<>();
+        for (int i = 0; i < lines.size(); i++) {
+            int row = (int) (firstRow + i);
+            String line = lines.get(i);
+            try {
+                if (entity == Entity.FILMS) {
+                    Film film = csv ? parseFilm(splitCsv(line)) : objectMapper.readValue(line, Film.class);
+                    String error = filmService.validate(film);
+                    if (error == null && !keys.add(film.getName())) {
+                        error = "Фильм " + film.getName() + " повторяется в запросе";
+                    }
+                    if (error == null) {
+                        chunk.films.put(row, film);
+                    } else {
+                        chunk.errors.add("Строка " + row + ": " + error);
+                    }
+                } else if (entity == Entity.USERS) {
+                    User user = csv ? parseUser(splitCsv(line)) : objectMapper.readValue(line, User.class);
+                    String error = userService.validate(user);
+                    if (error == null && keys.contains("email:" + user.getEmail())) {
+                        error = "Пользователь с email: " + user.getEmail() + " повторяется в запросе";
+                    } else if (error == null && keys.contains("login:" + user.getLogin())) {
+                        error = "Пользователь с login: " + user.getLogin() + " повторяется в запросе";
+                    }
+                    if (error == null) {
+                        keys.add("email:" + user.getEmail());
+                        keys.add("login:" + user.getLogin());
+                        chunk.users.put(row, user);
+                    } else {
+                        chunk.errors.add("Строка " + row + ": " + error);
+                    }
+                } else {
+                    chunk.links.add(csv ? parseLink(splitCsv(line)) : parseLink(objectMapper.readTree(line), entity));
+                }
+            } catch (IOException | RuntimeException e) {
+                chunk.errors.add("Строка " + row + ": неверный формат данных");
+            }
+        }
+        return chunk;
+    }
+
+    //CSV фильмов: name,description,releaseDate,duration,mpaId,genreIds через пробел
+    private Film parseFilm(List<String> fields) {
+        Set<Genre> genres = new LinkedHashSet<>();
+        for (String genreId : fields.get(5).trim().split(" +")) {
+            if (!genreId.isEmpty()) {
+                genres.add(Genre.builder().id(Integer.parseInt(genreId)).build());
+            }
+        }
+
+        return Film.builder()
+                .name(fields.get(0))
+                .description(fields.get(1))
+                .releaseDate(LocalDate.parse(fields.get(2)))
+                .duration(Integer.parseInt(fields.get(3)))
+                .mpa(Mpa.builder().id(Integer.parseInt(fields.get(4))).build())
+                .genres(genres)
+                .build();
+    }
+
+    //CSV пользователей: email,login,name,birthday
+    private User parseUser(List<String> fields) {
+        return User.builder()
+                .email(fields.get(0))
+                .login(fields.get(1))
+                .name(fields.get(2).isEmpty() ? null : fields.get(2))
+                .birthday(LocalDate.parse(fields.get(3)))
+                .build();
+    }
+
+    //CSV лайков: filmId,userId, связей дружбы: userId,friendId
+    private int[] parseLink(List<String> fields) {
+        return new int[]{Integer.parseInt(fields.get(0).trim()), Integer.parseInt(fields.get(1).trim())};
+    }
+
+    private int[] parseLink(JsonNode node, Entity entity) {
+        String first = (entity == Entity.LIKES) ? "filmId" : "userId";
+        String second = (entity == Entity.LIKES) ? "userId" : "friendId";
+        if (!node.path(first).canConvertToInt() || !node.path(second).canConvertToInt()) {
+            throw new IllegalArgumentException();
+        }
+        return new int[]{node.get(first).asInt(), node.get(second).asInt()};
+    }
+
+    //поля в кавычках могут содержать запятые, кавычка внутри таких полей удваивается
+    private static List<String> splitCsv(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c != '"') {
+                    field.append(c);
+                } else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    //данные, записанные в обход хранилищ, попадают в структуры в памяти только после перезагрузки
+    private void reload(Entity entity) {
+        if (entity == Entity.LIKES) {
+            filmStorage.reloadLikes();
+        } else if (entity == Entity.FRIENDS) {
+            log.info("Подтверждено взаимных связей дружбы: " + importDao.confirmMutualFriends());
+            userStorage.reloadFriends();
+        }
+    }
+
+    private enum Entity {
+        FILMS, USERS, LIKES, FRIENDS;
+
+        private static Entity of(String name) {
+            for (Entity entity : values()) {
+                if (entity.name().equalsIgnoreCase(name)) {
+                    return entity;
+                }
+            }
+            throw new RuntimeException("Неизвестный тип данных для импорта: " + name);
+        }
+    }
+
+    private static final class Chunk {
+        private final Entity entity;
+        private final long lastRow;
+        private final int size;
+        private final Map<Integer, Film> films = new LinkedHashMap<>();
+        private final Map<Integer, User> users = new LinkedHashMap<>();
+        private final List<int[]> links = new ArrayList<>();
+        private final List<String> errors = new ArrayList<>();
+
+        private Chunk(Entity entity, long lastRow, int size) {
+            this.entity = entity;
+            this.lastRow = lastRow;
+            this.size = size;
+        }
+    }
+
+    private static final class Progress {
+        private final String job;
+        private final long started = System.nanoTime();
+        private final List<String> errors = new ArrayList<>();
+        private long read;
+        private long skipped;
+        private long imported;
+        private long rejected;
+        private long chunks;
+
+        private Progress(String job) {
+            this.job = job;
+        }
+    }
+}
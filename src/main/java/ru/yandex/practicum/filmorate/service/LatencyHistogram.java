@@ -0,0 +1,86 @@
+package ru.yandex.practicum.filmorate.service;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+//класс LatencyHistogram - гистограмма времени в микросекундах с лог-линейными интервалами, как в HdrHistogram:
+//до 64 мкс интервал равен 1 мкс, дальше каждая степень двойки делится на SUB_BUCKETS равных интервалов,
+//поэтому перцентиль завышается не больше чем на 1/SUB_BUCKETS (около 3%) при постоянном объеме памяти
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_SHIFT = 32;
+    private static final long MAX_MICROS = ((2L * SUB_BUCKETS) << MAX_SHIFT) - 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(2 * SUB_BUCKETS + MAX_SHIFT * SUB_BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong maxMicros = new AtomicLong();
+
+    public void record(long micros) {
+        long value = Math.min(Math.max(micros, 0), MAX_MICROS);
+        counts.incrementAndGet(index(value));
+        count.incrementAndGet();
+        maxMicros.accumulateAndGet(value, Math::max);
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getMaxMicros() {
+        return maxMicros.get();
+    }
+
+    //верхняя граница интервала, в который попадает перцентиль, но не больше максимума
+    public long percentile(double quantile) {
+        return percentile(List.of(this), quantile);
+    }
+
+    //перцентиль по сумме нескольких гистограмм, например по всем статусам одного эндпоинта
+    public static long percentile(Iterable<LatencyHistogram> histograms, double quantile) {
+        long[] merged = null;
+        long total = 0;
+        long max = 0;
+        for (LatencyHistogram histogram : histograms) {
+            if (merged == null) {
+                merged = new long[histogram.counts.length()];
+            }
+            for (int i = 0; i < merged.length; i++) {
+                merged[i] += histogram.counts.get(i);
+            }
+            total += histogram.count.get();
+            max = Math.max(max, histogram.maxMicros.get());
+        }
+        return merged == null ? 0 : percentile(merged, total, quantile, max);
+    }
+
+    private static long percentile(long[] counts, long total, double quantile, long max) {
+        long rank = Math.max(1, (long) Math.ceil(total * quantile));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(upperBound(i), max);
+            }
+        }
+        return max;
+    }
+
+    private static int index(long value) {
+        if (value < 2 * SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return 2 * SUB_BUCKETS + (shift - 1) * SUB_BUCKETS + (int) ((value >>> shift) - SUB_BUCKETS);
+    }
+
+    private static long upperBound(int index) {
+        if (index < 2 * SUB_BUCKETS) {
+            return index;
+        }
+        int shift = (index - 2 * SUB_BUCKETS) / SUB_BUCKETS + 1;
+        long base = (long) ((index - 2 * SUB_BUCKETS) % SUB_BUCKETS + SUB_BUCKETS) << shift;
+        return base + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,53 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.dao.impl.QueryMetrics;
+import ru.yandex.practicum.filmorate.model.CacheStats;
+import ru.yandex.practicum.filmorate.model.EndpointStats;
+import ru.yandex.practicum.filmorate.model.IdFilterStats;
+import ru.yandex.practicum.filmorate.model.QueryStats;
+import ru.yandex.practicum.filmorate.storage.CacheRegistry;
+import ru.yandex.practicum.filmorate.storage.IdFilterRegistry;
+
+import java.util.List;
+import java.util.Map;
+
+@Slf4j
+@Service
+public class MetricsService {
+    private final CacheRegistry cacheRegistry;
+    private final IdFilterRegistry idFilterRegistry;
+    private final QueryMetrics queryMetrics;
+    private final EndpointMetrics endpointMetrics;
+
+    @Autowired
+    public MetricsService(CacheRegistry cacheRegistry, IdFilterRegistry idFilterRegistry, QueryMetrics queryMetrics,
+                          EndpointMetrics endpointMetrics) {
+        this.cacheRegistry = cacheRegistry;
+        this.idFilterRegistry = idFilterRegistry;
+        this.queryMetrics = queryMetrics;
+        this.endpointMetrics = endpointMetrics;
+    }
+
+    public Map<String, CacheStats> getCacheStats() {
+        log.info("Запрос статистики кешей");
+        return cacheRegistry.getStats();
+    }
+
+    public Map<String, IdFilterStats> getIdFilterStats() {
+        log.info("Запрос статистики фильтров ID");
+        return idFilterRegistry.getStats();
+    }
+
+    public List<QueryStats> getQueryStats() {
+        log.info("Запрос статистики SQL-запросов");
+        return queryMetrics.getStats();
+    }
+
+    public List<EndpointStats> getEndpointStats() {
+        log.info("Запрос статистики эндпоинтов");
+        return endpointMetrics.getStats();
+    }
+}
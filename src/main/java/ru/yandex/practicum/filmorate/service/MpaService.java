@@ -5,6 +5,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.dao.MpaDao;
 import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.storage.EntityVersions;
 
 import java.util.List;
 
@@ -12,10 +13,16 @@ import java.util.List;
 @Service
 public class MpaService {
     private final MpaDao mpaDao;
+    private final EntityVersions versions;
 
     @Autowired
-    public MpaService(MpaDao mpaDao) {
+    public MpaService(MpaDao mpaDao, EntityVersions versions) {
         this.mpaDao = mpaDao;
+        this.versions = versions;
+    }
+
+    public String getTag() {
+        return versions.referenceTag("m");
     }
 
     public List<Mpa> getAllMpa() {
@@ -4,26 +4,69 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.Constants;
 import ru.yandex.practicum.filmorate.exception.AlreadyExistsException;
+import ru.yandex.practicum.filmorate.model.BatchItemResult;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.EntityVersions;
 import ru.yandex.practicum.filmorate.storage.user.UserStorage;
 
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
 
 @Slf4j
 @Service
 public class UserService {
     private final UserStorage userStorage;
+    private final Validator validator;
+    private final EntityVersions versions;
 
     @Autowired
-    public UserService(UserStorage userStorage) {
+    public UserService(UserStorage userStorage, Validator validator, EntityVersions versions) {
         this.userStorage = userStorage;
+        this.validator = validator;
+        this.versions = versions;
     }
 
     public List<User> getAllUsers() {
         log.info("Запрос данных всех пользователей");
-        return new ArrayList<>(userStorage.getUsers().values());
+
+        List<User> users = new ArrayList<>();
+        List<User> page;
+        Integer after = 0;
+        do {
+            page = userStorage.getUsers(after, Constants.MAX_PAGE_SIZE);
+            users.addAll(page);
+            if (!page.isEmpty()) {
+                after = page.get(page.size() - 1).getId();
+            }
+        } while (page.size() == Constants.MAX_PAGE_SIZE);
+
+        return users;
+    }
+
+    public List<User> getUsers(Integer after, Integer limit) {
+        after = (after == null) ? 0 : after;
+        limit = (limit == null) ? Constants.DEFAULT_PAGE_SIZE : limit;
+        if (limit <= 0 || limit > Constants.MAX_PAGE_SIZE) {
+            throw new RuntimeException("Размер страницы должен быть от 1 до " + Constants.MAX_PAGE_SIZE);
+        }
+
+        log.info("Запрос данных " + limit + " пользователей после ID: " + after);
+        return userStorage.getUsers(after, limit);
+    }
+
+    public void streamUsers(Consumer<User> consumer) {
+        log.info("Потоковая выгрузка данных всех пользователей");
+        userStorage.streamUsers(consumer);
     }
 
     public User getUserById(Integer userId) {
@@ -31,6 +74,10 @@ public class UserService {
         return userStorage.getUser(userId);
     }
 
+    public String getUserTag(Integer userId) {
+        return versions.userTag(userId);
+    }
+
     public User createUser(User user) {
         Integer id = userStorage.putUser(user);
         log.info("Создан пользователь ID: " + id + ", email: " + user.getEmail() + ", login: "
@@ -38,6 +85,46 @@ public class UserService {
         return userStorage.getUser(id);
     }
 
+    //весь пакет проверяется до записи: ошибочные элементы и повторы email или login внутри пакета
+    //получают свой результат, остальные сохраняются одной транзакцией
+    public List<BatchItemResult> addUsers(List<User> users) {
+        if (users == null || users.isEmpty() || users.size() > Constants.MAX_BATCH_SIZE) {
+            throw new RuntimeException("Размер пакета должен быть от 1 до " + Constants.MAX_BATCH_SIZE);
+        }
+
+        List<BatchItemResult> results = new ArrayList<>(users.size());
+        Map<Integer, User> valid = new LinkedHashMap<>();
+        Set<String> emails = new HashSet<>();
+        Set<String> logins = new HashSet<>();
+        for (int i = 0; i < users.size(); i++) {
+            User user = users.get(i);
+            String error = validate(user);
+            if (error != null) {
+                results.add(BatchItemResult.failed(i, HttpStatus.BAD_REQUEST, error));
+            } else if (emails.contains(user.getEmail())) {
+                results.add(BatchItemResult.failed(i, HttpStatus.CONFLICT,
+                        "Пользователь с email: " + user.getEmail() + " повторяется в запросе"));
+            } else if (logins.contains(user.getLogin())) {
+                results.add(BatchItemResult.failed(i, HttpStatus.CONFLICT,
+                        "Пользователь с login: " + user.getLogin() + " повторяется в запросе"));
+            } else {
+                //email и login отклоненного элемента не занимаются, поэтому не мешают следующим элементам пакета
+                emails.add(user.getEmail());
+                logins.add(user.getLogin());
+                valid.put(i, user);
+            }
+        }
+
+        if (!valid.isEmpty()) {
+            results.addAll(userStorage.addUsers(valid));
+            results.sort(Comparator.comparingInt(BatchItemResult::getIndex));
+        }
+
+        log.info("Пакетное добавление пользователей: получено " + users.size() + ", добавлено "
+                + results.stream().filter(result -> result.getId() != null).count());
+        return results;
+    }
+
     public User updateUser(User user) {
         if (user.getId() == null) {
             throw new RuntimeException("Переданные параметры пользователя не содержат ID");
@@ -69,6 +156,15 @@ public class UserService {
         return userStorage.getCommonFriends(firstId, secondId);
     }
 
+    public List<User> getSuggestions(Integer userId, Integer limit) {
+        if (limit <= 0 || limit > Constants.MAX_PAGE_SIZE) {
+            throw new RuntimeException("Количество рекомендаций должно быть от 1 до " + Constants.MAX_PAGE_SIZE);
+        }
+
+        log.info("Запрос " + limit + " возможных друзей пользователя с ID: " + userId);
+        return userStorage.getSuggestions(userId, limit);
+    }
+
     public ResponseDefault addFriend(Integer userId, Integer friendsId) {
         log.info("Запрос добавления пользователя с ID: " + friendsId + " в друзья пользователея с ID: " + userId);
         return userStorage.addFriend(userId, friendsId);
@@ -78,4 +174,24 @@ public class UserService {
         log.info("Запрос удаления пользователя с ID: " + friendsId + " из друзей пользователея с ID: " + userId);
         return userStorage.removeFriend(userId, friendsId);
     }
-}
\ No newline at end of file
+
+    String validate(User user) {
+        if (user == null) {
+            return "Переданы пустые параметры пользователя";
+        }
+
+        String violation = validator.validate(user).stream()
+                .sorted(Comparator.comparing(v -> v.getPropertyPath().toString()))
+                .map(ConstraintViolation::getMessage)
+                .findFirst()
+                .orElse(null);
+        if (violation != null) {
+            return violation;
+        }
+
+        if (user.getBirthday() == null) {
+            return "Не указан день рождения пользователя";
+        }
+        return null;
+    }
+}
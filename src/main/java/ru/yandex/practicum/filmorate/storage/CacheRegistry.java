@@ -0,0 +1,25 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.CacheStats;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+//кеши регистрируются под именем, чтобы их статистику можно было отдать одним запросом
+@Component
+public class CacheRegistry {
+    private final Map<String, SegmentedLruCache<?, ?>> caches = new ConcurrentSkipListMap<>();
+
+    public <K, V> SegmentedLruCache<K, V> register(String name, SegmentedLruCache<K, V> cache) {
+        caches.put(name, cache);
+        return cache;
+    }
+
+    public Map<String, CacheStats> getStats() {
+        Map<String, CacheStats> stats = new LinkedHashMap<>();
+        caches.forEach((name, cache) -> stats.put(name, cache.getStats()));
+        return stats;
+    }
+}
@@ -0,0 +1,62 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+//класс EntityVersions хранит версии фильмов и пользователей для ETag: версия записи увеличивается после каждого
+//изменения, видного в ее JSON, а изменения сразу многих записей (удаление пользователя вместе с его лайками
+//и связями, перезагрузка после импорта) увеличивают общую эпоху; instance отличает версии после перезапуска;
+//версия читается до загрузки данных, а увеличивается после коммита изменения, поэтому ETag никогда не бывает
+//новее отданного JSON
+@Component
+public class EntityVersions {
+    private final String instance = Long.toString(System.currentTimeMillis(), 36);
+    private final Map<Integer, Long> films = new ConcurrentHashMap<>();
+    private final Map<Integer, Long> users = new ConcurrentHashMap<>();
+    private final AtomicLong filmsEpoch = new AtomicLong();
+    private final AtomicLong usersEpoch = new AtomicLong();
+    private final AtomicLong referenceVersion = new AtomicLong();
+
+    public void filmChanged(int filmId) {
+        AfterCommit.run(() -> films.merge(filmId, 1L, Long::sum));
+    }
+
+    public void allFilmsChanged() {
+        AfterCommit.run(() -> filmsEpoch.incrementAndGet());
+    }
+
+    public void userChanged(int userId) {
+        AfterCommit.run(() -> users.merge(userId, 1L, Long::sum));
+    }
+
+    public void allUsersChanged() {
+        AfterCommit.run(() -> usersEpoch.incrementAndGet());
+    }
+
+    //справочники жанров и MPA; их названия входят и в JSON фильмов
+    public void referenceChanged() {
+        AfterCommit.run(() -> {
+            referenceVersion.incrementAndGet();
+            filmsEpoch.incrementAndGet();
+        });
+    }
+
+    public String filmTag(int filmId) {
+        return tag("f" + filmId, filmsEpoch.get(), films.getOrDefault(filmId, 0L));
+    }
+
+    public String userTag(int userId) {
+        return tag("u" + userId, usersEpoch.get(), users.getOrDefault(userId, 0L));
+    }
+
+    public String referenceTag(String kind) {
+        return tag(kind, referenceVersion.get(), 0);
+    }
+
+    private String tag(String kind, long epoch, long version) {
+        return "\"" + kind + "-" + instance + "-" + epoch + "-" + version + "\"";
+    }
+}
@@ -0,0 +1,239 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import lombok.extern.slf4j.Slf4j;
+import ru.yandex.practicum.filmorate.model.IdFilterStats;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+//класс IdBloomFilter - фильтр Блума по ID сущности: отрицательный ответ mightContain означает, что ID точно нет,
+//и запрос можно отклонить без обращения к базе; удалить ID из фильтра нельзя, поэтому удаленные ID остаются
+//ложноположительными, пока число удалений не превысит rebuildAfterDeletes и фильтр не будет перестроен по таблице;
+//перестроение из-за удалений или переполнения выполняется в rebuilder, не задерживая запрос, который его вызвал;
+//до первой загрузки фильтр пропускает все ID
+@Slf4j
+public class IdBloomFilter {
+    private final String name;
+    private final Consumer<IntConsumer> ids;
+    private final double falsePositiveRate;
+    private final int minCapacity;
+    private final int rebuildAfterDeletes;
+    private final Executor rebuilder;
+    private final LongAdder checks = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder falsePositives = new LongAdder();
+    private volatile Bits bits;
+    private List<Integer> addedDuringRebuild;
+    private int insertions;
+    private int deletesSinceRebuild;
+    private long rebuilds;
+    private boolean rebuilding;
+
+    //ids - обход всех ID сущности в таблице
+    public IdBloomFilter(String name, Consumer<IntConsumer> ids, double falsePositiveRate, int minCapacity,
+                         int rebuildAfterDeletes, Executor rebuilder) {
+        this.name = name;
+        this.ids = ids;
+        this.falsePositiveRate = falsePositiveRate;
+        this.minCapacity = Math.max(minCapacity, 1);
+        this.rebuildAfterDeletes = rebuildAfterDeletes;
+        this.rebuilder = rebuilder;
+    }
+
+    public boolean mightContain(int id) {
+        checks.increment();
+        Bits current = bits;
+        if (current == null || current.mightContain(id)) {
+            return true;
+        }
+        rejected.increment();
+        return false;
+    }
+
+    //ID, прошедший фильтр, не нашелся в базе
+    public void recordFalsePositive() {
+        falsePositives.increment();
+    }
+
+    //внутри транзакции ID попадает в фильтр после коммита: иначе перестроение, прочитавшее таблицу до коммита,
+    //потеряло бы его; до коммита ID все равно не виден другим запросам
+    public void add(int id) {
+        AfterCommit.run(() -> addNow(id));
+    }
+
+    public void remove(int id) {
+        boolean rebuildNeeded;
+        synchronized (this) {
+            deletesSinceRebuild++;
+            rebuildNeeded = deletesSinceRebuild >= rebuildAfterDeletes;
+        }
+        if (rebuildNeeded) {
+            rebuildInBackground();
+        }
+    }
+
+    public void rebuild() {
+        if (startRebuild()) {
+            load();
+        }
+    }
+
+    //ID, добавленные с начала перестроения, запоминаются и переносятся в новый фильтр перед заменой
+    private synchronized boolean startRebuild() {
+        if (rebuilding) {
+            return false;
+        }
+        rebuilding = true;
+        addedDuringRebuild = new ArrayList<>();
+        return true;
+    }
+
+    private void rebuildInBackground() {
+        if (!startRebuild()) {
+            return;
+        }
+        try {
+            rebuilder.execute(() -> {
+                try {
+                    load();
+                } catch (RuntimeException e) {
+                    log.warn("Фильтр ID " + name + " не перестроен: " + e.getMessage());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            finishRebuild();
+        }
+    }
+
+    private void load() {
+        try {
+            int[][] loaded = {new int[1024]};
+            int[] size = new int[1];
+            ids.accept(id -> {
+                if (size[0] == loaded[0].length) {
+                    loaded[0] = Arrays.copyOf(loaded[0], size[0] * 2);
+                }
+                loaded[0][size[0]++] = id;
+            });
+
+            //запас вдвое, чтобы новые ID не сразу увеличивали долю ложноположительных ответов
+            Bits rebuilt = new Bits((int) Math.min(Integer.MAX_VALUE, Math.max(minCapacity, 2L * size[0])),
+                    falsePositiveRate);
+            for (int i = 0; i < size[0]; i++) {
+                rebuilt.add(loaded[0][i]);
+            }
+
+            synchronized (this) {
+                addedDuringRebuild.forEach(rebuilt::add);
+                insertions = size[0] + addedDuringRebuild.size();
+                deletesSinceRebuild = 0;
+                rebuilds++;
+                bits = rebuilt;
+            }
+            log.info("Фильтр ID " + name + " перестроен, ID: " + size[0] + ", емкость: " + rebuilt.capacity);
+        } finally {
+            finishRebuild();
+        }
+    }
+
+    private synchronized void finishRebuild() {
+        addedDuringRebuild = null;
+        rebuilding = false;
+    }
+
+    public synchronized IdFilterStats getStats() {
+        Bits current = bits;
+        long rejectedCount = rejected.sum();
+        long falsePositiveCount = falsePositives.sum();
+        long absent = rejectedCount + falsePositiveCount;
+
+        return IdFilterStats.builder()
+                .capacity(current == null ? 0 : current.capacity)
+                .bits(current == null ? 0 : current.size)
+                .hashFunctions(current == null ? 0 : current.hashFunctions)
+                .insertions(insertions)
+                .deletesSinceRebuild(deletesSinceRebuild)
+                .rebuilds(rebuilds)
+                .checks(checks.sum())
+                .rejected(rejectedCount)
+                .falsePositives(falsePositiveCount)
+                .expectedFalsePositiveRate(current == null ? 1 : current.expectedFalsePositiveRate(insertions))
+                .observedFalsePositiveRate(absent == 0 ? 0 : (double) falsePositiveCount / absent)
+                .build();
+    }
+
+    private void addNow(int id) {
+        boolean rebuildNeeded;
+        synchronized (this) {
+            if (bits != null) {
+                bits.add(id);
+            }
+            if (addedDuringRebuild != null) {
+                addedDuringRebuild.add(id);
+            }
+            insertions++;
+            rebuildNeeded = bits != null && insertions > bits.capacity;
+        }
+        if (rebuildNeeded) {
+            rebuildInBackground();
+        }
+    }
+
+    //набор битов на capacity ID с заданной вероятностью ложноположительного ответа
+    private static final class Bits {
+        private final int capacity;
+        private final long size;
+        private final int hashFunctions;
+        private final AtomicLongArray words;
+
+        private Bits(int capacity, double falsePositiveRate) {
+            this.capacity = capacity;
+            this.size = Math.max(64, (long) Math.ceil(-capacity * Math.log(falsePositiveRate)
+                    / (Math.log(2) * Math.log(2))));
+            this.hashFunctions = Math.max(1, (int) Math.round((double) size / capacity * Math.log(2)));
+            this.words = new AtomicLongArray((int) ((size + 63) / 64));
+        }
+
+        private void add(int id) {
+            long hash = mix(id);
+            int first = (int) hash;
+            int second = (int) (hash >>> 32);
+            for (int i = 0; i < hashFunctions; i++) {
+                long bit = Integer.toUnsignedLong(first + i * second) % size;
+                words.accumulateAndGet((int) (bit >>> 6), 1L << bit, (word, mask) -> word | mask);
+            }
+        }
+
+        private boolean mightContain(int id) {
+            long hash = mix(id);
+            int first = (int) hash;
+            int second = (int) (hash >>> 32);
+            for (int i = 0; i < hashFunctions; i++) {
+                long bit = Integer.toUnsignedLong(first + i * second) % size;
+                if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private double expectedFalsePositiveRate(int insertions) {
+            return Math.pow(1 - Math.exp(-(double) hashFunctions * insertions / size), hashFunctions);
+        }
+
+        //перемешивание SplitMix64, чтобы последовательные ID не попадали в соседние биты
+        private static long mix(int id) {
+            long z = id + 0x9E3779B97F4A7C15L;
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            return z ^ (z >>> 31);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.IdFilterStats;
+
+import javax.annotation.PreDestroy;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+//фильтры ID создаются здесь с общими настройками и общим фоновым потоком перестроения
+//и регистрируются под именем сущности для метрик
+@Component
+public class IdFilterRegistry {
+    private final Map<String, IdBloomFilter> filters = new ConcurrentSkipListMap<>();
+    private final double falsePositiveRate;
+    private final int minCapacity;
+    private final int rebuildAfterDeletes;
+    private final ExecutorService rebuilder = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "id-filter-rebuild");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public IdFilterRegistry(@Value("${filmorate.id-filters.false-positive-rate:0.01}") double falsePositiveRate,
+                            @Value("${filmorate.id-filters.min-capacity:10000}") int minCapacity,
+                            @Value("${filmorate.id-filters.rebuild-after-deletes:1000}") int rebuildAfterDeletes) {
+        this.falsePositiveRate = falsePositiveRate;
+        this.minCapacity = minCapacity;
+        this.rebuildAfterDeletes = rebuildAfterDeletes;
+    }
+
+    public IdBloomFilter register(String name, Consumer<IntConsumer> ids) {
+        IdBloomFilter filter = new IdBloomFilter(name, ids, falsePositiveRate, minCapacity, rebuildAfterDeletes,
+                rebuilder);
+        filters.put(name, filter);
+        return filter;
+    }
+
+    @PreDestroy
+    public void stop() {
+        rebuilder.shutdownNow();
+    }
+
+    public Map<String, IdFilterStats> getStats() {
+        Map<String, IdFilterStats> stats = new LinkedHashMap<>();
+        filters.forEach((name, filter) -> stats.put(name, filter.getStats()));
+        return stats;
+    }
+}
@@ -0,0 +1,141 @@
+package ru.yandex.practicum.filmorate.storage;
+
+//класс IntIntMap - хеш-таблица int -> int с открытой адресацией и линейным пробированием на двух примитивных
+//массивах, без упаковки ключей и значений; ключ 0 хранится отдельно, потому что 0 в массиве ключей - пустая ячейка;
+//таблица заполняется не больше чем наполовину, отсутствующему ключу соответствует значение 0
+public class IntIntMap {
+    private static final int MIN_CAPACITY = 8;
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    private int[] keys;
+    private int[] values;
+    private int mask;
+    private int size;
+    private boolean hasZeroKey;
+    private int zeroKeyValue;
+
+    public IntIntMap() {
+        this(MIN_CAPACITY / 2);
+    }
+
+    public IntIntMap(int expectedSize) {
+        int capacity = tableSize(expectedSize);
+        this.keys = new int[capacity];
+        this.values = new int[capacity];
+        this.mask = capacity - 1;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int get(int key) {
+        if (key == 0) {
+            return zeroKeyValue;
+        }
+        int slot = slot(key);
+        return (keys[slot] == 0) ? 0 : values[slot];
+    }
+
+    //возвращает новое значение; ключ со значением 0 остается в таблице, пока его не удалят
+    public int add(int key, int delta) {
+        if (key == 0) {
+            if (!hasZeroKey) {
+                hasZeroKey = true;
+                size++;
+            }
+            return zeroKeyValue += delta;
+        }
+        int slot = slot(key);
+        if (keys[slot] == 0) {
+            if (2 * (size + 1) > keys.length && keys.length < MAX_CAPACITY) {
+                resize(keys.length * 2);
+                slot = slot(key);
+            }
+            keys[slot] = key;
+            size++;
+        }
+        return values[slot] += delta;
+    }
+
+    //удаление со сдвигом следующих записей цепочки на освободившееся место, без меток удаленных ячеек
+    public void remove(int key) {
+        if (key == 0) {
+            if (hasZeroKey) {
+                hasZeroKey = false;
+                zeroKeyValue = 0;
+                size--;
+            }
+            return;
+        }
+        int hole = slot(key);
+        if (keys[hole] == 0) {
+            return;
+        }
+        size--;
+        for (int i = (hole + 1) & mask; keys[i] != 0; i = (i + 1) & mask) {
+            int home = hash(keys[i]) & mask;
+            if (((i - home) & mask) >= ((i - hole) & mask)) {
+                keys[hole] = keys[i];
+                values[hole] = values[i];
+                hole = i;
+            }
+        }
+        keys[hole] = 0;
+        values[hole] = 0;
+    }
+
+    public void forEach(EntryConsumer action) {
+        if (hasZeroKey) {
+            action.accept(0, zeroKeyValue);
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != 0) {
+                action.accept(keys[i], values[i]);
+            }
+        }
+    }
+
+    //ячейка ключа или пустая ячейка, в которую его следует записать
+    private int slot(int key) {
+        int slot = hash(key) & mask;
+        while (keys[slot] != 0 && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void resize(int capacity) {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new int[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) {
+                int slot = slot(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private static int tableSize(int expectedSize) {
+        long needed = Math.max(MIN_CAPACITY, 2L * expectedSize);
+        return (int) Math.min(MAX_CAPACITY, Long.highestOneBit(needed - 1) << 1);
+    }
+
+    //последовательные ID разносятся по таблице умножением на константу Фибоначчи
+    private static int hash(int key) {
+        int hash = key * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    public interface EntryConsumer {
+        void accept(int key, int value);
+    }
+}
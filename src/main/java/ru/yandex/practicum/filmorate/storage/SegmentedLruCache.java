@@ -0,0 +1,168 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import ru.yandex.practicum.filmorate.model.CacheStats;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+//класс SegmentedLruCache - ограниченный кеш с сегментированным LRU: новая запись попадает в испытательный сегмент,
+//повторно запрошенная переходит в защищенный (PROTECTED_SHARE емкости), а вытесняется самая давняя запись
+//испытательного сегмента, поэтому однократные чтения (например, обход всех фильмов) не вымывают часто читаемые;
+//ключи распределены по независимым полосам со своей блокировкой, чтобы чтения разных ключей не ждали друг друга
+public class SegmentedLruCache<K, V> {
+    private static final double PROTECTED_SHARE = 0.8;
+    private static final int MAX_STRIPES = 16;
+    private static final int MIN_STRIPE_CAPACITY = 64;
+
+    private final int capacity;
+    private final Stripe<K, V>[] stripes;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    //число полос - степень двойки, при которой на полосу приходится не меньше MIN_STRIPE_CAPACITY записей,
+    //иначе LRU маленького кеша заметно отличался бы от общего
+    @SuppressWarnings("unchecked")
+    public SegmentedLruCache(int capacity) {
+        this.capacity = Math.max(capacity, 1);
+        int count = Integer.highestOneBit(Math.max(1, Math.min(MAX_STRIPES, this.capacity / MIN_STRIPE_CAPACITY)));
+        this.stripes = new Stripe[count];
+        for (int i = 0; i < count; i++) {
+            int stripeCapacity = this.capacity / count + ((i < this.capacity % count) ? 1 : 0);
+            stripes[i] = new Stripe<>(stripeCapacity);
+        }
+    }
+
+    public V get(K key) {
+        return get(key, value -> true);
+    }
+
+    //запись, не прошедшая проверку fresh, удаляется и считается промахом
+    public V get(K key, Predicate<V> fresh) {
+        V value = stripe(key).get(key, fresh);
+        (value == null ? misses : hits).increment();
+        return value;
+    }
+
+    public void put(K key, V value) {
+        if (stripe(key).put(key, value)) {
+            evictions.increment();
+        }
+    }
+
+    public void invalidate(K key) {
+        stripe(key).invalidate(key);
+    }
+
+    public void clear() {
+        for (Stripe<K, V> stripe : stripes) {
+            stripe.clear();
+        }
+    }
+
+    public CacheStats getStats() {
+        int size = 0;
+        for (Stripe<K, V> stripe : stripes) {
+            size += stripe.size();
+        }
+        long hitCount = hits.sum();
+        long requests = hitCount + misses.sum();
+        return CacheStats.builder()
+                .size(size)
+                .capacity(capacity)
+                .hits(hitCount)
+                .misses(requests - hitCount)
+                .evictions(evictions.sum())
+                .hitRate((requests == 0) ? 0 : (double) hitCount / requests)
+                .build();
+    }
+
+    private Stripe<K, V> stripe(K key) {
+        int hash = key.hashCode();
+        return stripes[(hash ^ (hash >>> 16)) & (stripes.length - 1)];
+    }
+
+    private static final class Stripe<K, V> {
+        private final int capacity;
+        private final int protectedCapacity;
+        private final LinkedHashMap<K, V> probation = new LinkedHashMap<>(16, 0.75f, true);
+        private final LinkedHashMap<K, V> protectedSegment = new LinkedHashMap<>(16, 0.75f, true);
+
+        private Stripe(int capacity) {
+            this.capacity = capacity;
+            this.protectedCapacity = (int) (capacity * PROTECTED_SHARE);
+        }
+
+        private synchronized V get(K key, Predicate<V> fresh) {
+            boolean inProtected = true;
+            V value = protectedSegment.get(key);
+            if (value == null) {
+                inProtected = false;
+                value = probation.get(key);
+            }
+
+            if (value == null || !fresh.test(value)) {
+                if (value != null) {
+                    (inProtected ? protectedSegment : probation).remove(key);
+                }
+                return null;
+            }
+
+            if (!inProtected) {
+                promote(key, probation.remove(key));
+            }
+            return value;
+        }
+
+        //возвращает true, если ради новой записи была вытеснена другая
+        private synchronized boolean put(K key, V value) {
+            if (protectedSegment.containsKey(key)) {
+                protectedSegment.put(key, value);
+                return false;
+            }
+
+            probation.put(key, value);
+            boolean evicted = false;
+            while (probation.size() + protectedSegment.size() > capacity) {
+                removeEldest(probation.isEmpty() ? protectedSegment : probation);
+                evicted = true;
+            }
+            return evicted;
+        }
+
+        private synchronized void invalidate(K key) {
+            if (protectedSegment.remove(key) == null) {
+                probation.remove(key);
+            }
+        }
+
+        private synchronized void clear() {
+            probation.clear();
+            protectedSegment.clear();
+        }
+
+        private synchronized int size() {
+            return probation.size() + protectedSegment.size();
+        }
+
+        //защищенный сегмент переполнен - его самая давняя запись получает еще один шанс в испытательном
+        private void promote(K key, V value) {
+            protectedSegment.put(key, value);
+            if (protectedSegment.size() > protectedCapacity) {
+                Map.Entry<K, V> eldest = removeEldest(protectedSegment);
+                probation.put(eldest.getKey(), eldest.getValue());
+            }
+        }
+
+        private Map.Entry<K, V> removeEldest(LinkedHashMap<K, V> segment) {
+            Iterator<Map.Entry<K, V>> iterator = segment.entrySet().iterator();
+            Map.Entry<K, V> eldest = iterator.next();
+            Map.Entry<K, V> removed = Map.entry(eldest.getKey(), eldest.getValue());
+            iterator.remove();
+            return removed;
+        }
+    }
+}
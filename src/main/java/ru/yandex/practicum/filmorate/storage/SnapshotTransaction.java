@@ -0,0 +1,44 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+
+//класс SnapshotTransaction выполняет чтение в транзакции H2 с уровнем SNAPSHOT: в отличие от REPEATABLE_READ,
+//при котором таблица, впервые прочитанная после чужого коммита, уже видит новые строки, все таблицы
+//читаются по состоянию на начало транзакции; у Spring нет константы этого уровня, поэтому он задается
+//собственным TransactionDefinition, а после транзакции уровень соединения восстанавливает менеджер транзакций
+@Component
+public class SnapshotTransaction {
+    //org.h2.engine.Constants.TRANSACTION_SNAPSHOT
+    private static final int ISOLATION_SNAPSHOT = 6;
+    private static final TransactionDefinition READ_ONLY_SNAPSHOT = new TransactionDefinition() {
+        @Override
+        public int getIsolationLevel() {
+            return ISOLATION_SNAPSHOT;
+        }
+
+        @Override
+        public boolean isReadOnly() {
+            return true;
+        }
+    };
+
+    private final PlatformTransactionManager transactionManager;
+
+    public SnapshotTransaction(PlatformTransactionManager transactionManager) {
+        this.transactionManager = transactionManager;
+    }
+
+    public void run(Runnable action) {
+        TransactionStatus status = transactionManager.getTransaction(READ_ONLY_SNAPSHOT);
+        try {
+            action.run();
+        } catch (RuntimeException | Error e) {
+            transactionManager.rollback(status);
+            throw e;
+        }
+        transactionManager.commit(status);
+    }
+}
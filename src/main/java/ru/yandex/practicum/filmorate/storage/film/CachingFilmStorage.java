@@ -0,0 +1,164 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.dao.impl.FilmDbStorage;
+import ru.yandex.practicum.filmorate.model.BatchItemResult;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.service.ResponseDefault;
+import ru.yandex.practicum.filmorate.storage.CacheRegistry;
+import ru.yandex.practicum.filmorate.storage.EntityVersions;
+import ru.yandex.practicum.filmorate.storage.SegmentedLruCache;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+//класс CachingFilmStorage - кеш отдельных фильмов перед FilmDbStorage: запись сбрасывается изменениями фильма
+//через это хранилище, а вместе с фильмом хранится его версия из EntityVersions, поэтому изменения в обход кеша
+//(удаление пользователя с его лайками, импорт) тоже не отдают устаревший фильм;
+//закешированный фильм общий для всех запросов и не должен изменяться вызывающим кодом
+@Primary
+@Component
+public class CachingFilmStorage implements FilmStorage {
+    private final FilmDbStorage filmStorage;
+    private final EntityVersions versions;
+    private final SegmentedLruCache<Integer, Entry> films;
+
+    public CachingFilmStorage(FilmDbStorage filmStorage, EntityVersions versions, CacheRegistry cacheRegistry,
+                              @Value("${filmorate.films.cache-size:10000}") int capacity) {
+        this.filmStorage = filmStorage;
+        this.versions = versions;
+        this.films = cacheRegistry.register("films", new SegmentedLruCache<>(capacity));
+    }
+
+    @Override
+    public Film getFilm(Integer id) {
+        String version = versions.filmTag(id);
+        Entry entry = films.get(id, cached -> cached.version.equals(version));
+        if (entry != null) {
+            return entry.film;
+        }
+
+        //фильм, изменившийся во время загрузки, не кешируется: он мог быть прочитан до коммита изменения
+        Film film = filmStorage.getFilm(id);
+        if (version.equals(versions.filmTag(id))) {
+            films.put(id, new Entry(version, film));
+        }
+        return film;
+    }
+
+    @Override
+    public Integer putFilm(Film film) {
+        Integer id = filmStorage.putFilm(film);
+        films.invalidate(id);
+        return id;
+    }
+
+    @Override
+    public boolean deleteFilm(Integer id) {
+        boolean deleted = filmStorage.deleteFilm(id);
+        films.invalidate(id);
+        return deleted;
+    }
+
+    @Override
+    public ResponseDefault addLike(Integer filmId, Integer userId) {
+        ResponseDefault response = filmStorage.addLike(filmId, userId);
+        films.invalidate(filmId);
+        return response;
+    }
+
+    @Override
+    public ResponseDefault removeLike(Integer filmId, Integer userId) {
+        ResponseDefault response = filmStorage.removeLike(filmId, userId);
+        films.invalidate(filmId);
+        return response;
+    }
+
+    @Override
+    public void reloadLikes() {
+        filmStorage.reloadLikes();
+        films.clear();
+    }
+
+    @Override
+    public List<Film> getFilms(Integer after, Integer limit) {
+        return filmStorage.getFilms(after, limit);
+    }
+
+    @Override
+    public void streamFilms(Consumer<Film> consumer) {
+        filmStorage.streamFilms(consumer);
+    }
+
+    @Override
+    public List<BatchItemResult> addFilms(Map<Integer, Film> films) {
+        return filmStorage.addFilms(films);
+    }
+
+    //популярные фильмы берутся из кеша по ID из рейтинга, а из БД одним пакетом догружаются только промахи
+    @Override
+    public List<Film> getPopular(Integer count) {
+        List<Integer> ids = filmStorage.getPopularIds(count);
+        Film[] found = new Film[ids.size()];
+        String[] foundVersions = new String[ids.size()];
+        List<Integer> missing = new ArrayList<>();
+
+        for (int i = 0; i < ids.size(); i++) {
+            String version = versions.filmTag(ids.get(i));
+            Entry entry = films.get(ids.get(i), cached -> cached.version.equals(version));
+            if (entry != null) {
+                found[i] = entry.film;
+            } else {
+                foundVersions[i] = version;
+                missing.add(ids.get(i));
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            Map<Integer, Film> loaded = new HashMap<>();
+            filmStorage.getFilmsByIds(missing).forEach(film -> loaded.put(film.getId(), film));
+            for (int i = 0; i < ids.size(); i++) {
+                Integer id = ids.get(i);
+                if (found[i] == null && loaded.containsKey(id)) {
+                    found[i] = loaded.get(id);
+                    if (foundVersions[i].equals(versions.filmTag(id))) {
+                        films.put(id, new Entry(foundVersions[i], found[i]));
+                    }
+                }
+            }
+        }
+
+        List<Film> popular = new ArrayList<>(ids.size());
+        for (Film film : found) {
+            if (film != null) {
+                popular.add(film);
+            }
+        }
+        return popular;
+    }
+
+    @Override
+    public List<Film> getSimilar(Integer filmId, Integer limit) {
+        return filmStorage.getSimilar(filmId, limit);
+    }
+
+    @Override
+    public List<Film> getRecommendations(Integer userId, Integer limit) {
+        return filmStorage.getRecommendations(userId, limit);
+    }
+
+    private static final class Entry {
+        private final String version;
+        private final Film film;
+
+        private Entry(String version, Film film) {
+            this.version = version;
+            this.film = film;
+        }
+    }
+}
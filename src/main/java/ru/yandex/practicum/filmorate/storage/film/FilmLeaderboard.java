@@ -0,0 +1,85 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+
+//класс FilmLeaderboard хранит в памяти рейтинг фильмов, упорядоченный по количеству лайков (DESC) и ID (ASC);
+//лайки увеличивают только счетчики FilmLikeCounters, а рейтинг пересчитывается для измененных фильмов при чтении
+@Component
+public class FilmLeaderboard {
+    private final FilmLikeCounters counters;
+    private final Map<Integer, Integer> rankedLikes = new HashMap<>();
+    private final NavigableSet<Long> ranking = new TreeSet<>();
+
+    public FilmLeaderboard(FilmLikeCounters counters) {
+        this.counters = counters;
+    }
+
+    public synchronized void load(Map<Integer, Integer> likesCount) {
+        counters.load(likesCount);
+        rankedLikes.clear();
+        ranking.clear();
+        likesCount.forEach((filmId, likes) -> {
+            rankedLikes.put(filmId, likes);
+            ranking.add(rankKey(filmId, likes));
+        });
+    }
+
+    public synchronized void addFilm(Integer filmId) {
+        counters.addFilm(filmId);
+        if (rankedLikes.putIfAbsent(filmId, 0) == null) {
+            ranking.add(rankKey(filmId, 0));
+        }
+    }
+
+    public synchronized void removeFilm(Integer filmId) {
+        counters.removeFilm(filmId);
+        Integer likes = rankedLikes.remove(filmId);
+        if (likes != null) {
+            ranking.remove(rankKey(filmId, likes));
+        }
+    }
+
+    public void changeLikes(Integer filmId, int delta) {
+        counters.add(filmId, delta);
+    }
+
+    public Integer getLikes(Integer filmId) {
+        return counters.get(filmId);
+    }
+
+    public synchronized List<Integer> getTop(int count) {
+        counters.drainChanged(this::rerank);
+
+        List<Integer> top = new ArrayList<>(Math.min(Math.max(count, 0), ranking.size()));
+        Iterator<Long> iterator = ranking.iterator();
+        while (top.size() < count && iterator.hasNext()) {
+            top.add((int) (iterator.next() & 0xFFFFFFFFL));
+        }
+        return top;
+    }
+
+    private void rerank(int filmId) {
+        Integer oldLikes = rankedLikes.get(filmId);
+        Integer likes = counters.get(filmId);
+        if (oldLikes == null || likes == null || oldLikes.equals(likes)) {
+            return;
+        }
+        ranking.remove(rankKey(filmId, oldLikes));
+        rankedLikes.put(filmId, likes);
+        ranking.add(rankKey(filmId, likes));
+    }
+
+    //старшие 32 бита - инвертированное количество лайков, младшие - ID фильма, поэтому естественный порядок
+    //ключей совпадает с порядком ORDER BY likes_count DESC, film_id ASC
+    private static long rankKey(int filmId, int likes) {
+        return ((long) (Integer.MAX_VALUE - likes) << 32) | (filmId & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,105 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntConsumer;
+
+//класс FilmLikeCounters - счетчики лайков фильмов на LongAdder: одновременные лайки одного фильма
+//не блокируют друг друга, а измененные фильмы запоминаются для пересчета рейтинга и сверки с таблицей LIKES
+@Component
+public class FilmLikeCounters {
+    private final Map<Integer, LongAdder> counters = new ConcurrentHashMap<>();
+    private final Set<Integer> changed = ConcurrentHashMap.newKeySet();
+    private final Set<Integer> unreconciled = ConcurrentHashMap.newKeySet();
+
+    public void load(Map<Integer, Integer> likesCount) {
+        counters.clear();
+        changed.clear();
+        unreconciled.clear();
+        likesCount.forEach((filmId, likes) -> {
+            LongAdder counter = new LongAdder();
+            counter.add(likes);
+            counters.put(filmId, counter);
+        });
+    }
+
+    public void addFilm(Integer filmId) {
+        counters.putIfAbsent(filmId, new LongAdder());
+    }
+
+    public void removeFilm(Integer filmId) {
+        counters.remove(filmId);
+        changed.remove(filmId);
+        unreconciled.remove(filmId);
+    }
+
+    public void add(Integer filmId, int delta) {
+        LongAdder counter = counters.get(filmId);
+        if (counter == null) {
+            return;
+        }
+        counter.add(delta);
+        markChanged(filmId);
+    }
+
+    //возвращает null для неизвестного фильма
+    public Integer get(Integer filmId) {
+        LongAdder counter = counters.get(filmId);
+        return (counter == null) ? null : (int) Math.max(0, counter.sum());
+    }
+
+    //передает в action фильмы, измененные с прошлого вызова; фильм снимается с учета до чтения счетчика,
+    //поэтому лайк, пришедший во время обхода, попадет в следующий вызов
+    public void drainChanged(IntConsumer action) {
+        for (Integer filmId : changed) {
+            changed.remove(filmId);
+            action.accept(filmId);
+        }
+    }
+
+    public List<Integer> drainUnreconciled() {
+        List<Integer> filmIds = new ArrayList<>();
+        for (Integer filmId : unreconciled) {
+            unreconciled.remove(filmId);
+            filmIds.add(filmId);
+        }
+        return filmIds;
+    }
+
+    //фильм попадет в следующую сверку, даже если его счетчик не менялся
+    public void markUnreconciled(Integer filmId) {
+        unreconciled.add(filmId);
+    }
+
+    //приводит счетчик к количеству лайков в таблице LIKES; лайки, записанные во время сверки,
+    //могут дать временное расхождение, которое исправит следующая сверка
+    public boolean reconcile(Integer filmId, int likes) {
+        LongAdder counter = counters.get(filmId);
+        if (counter == null) {
+            return false;
+        }
+        long current = counter.sum();
+        if (current == likes) {
+            return false;
+        }
+        counter.add(likes - current);
+        markChanged(filmId);
+        return true;
+    }
+
+    //contains не блокирует, поэтому повторные лайки горячего фильма не конкурируют за корзину хеш-таблицы
+    private void markChanged(Integer filmId) {
+        if (!changed.contains(filmId)) {
+            changed.add(filmId);
+        }
+        if (!unreconciled.contains(filmId)) {
+            unreconciled.add(filmId);
+        }
+    }
+}
@@ -1,20 +1,26 @@
 package ru.yandex.practicum.filmorate.storage.film;
 
+import ru.yandex.practicum.filmorate.model.BatchItemResult;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.service.ResponseDefault;
 
 import java.sql.SQLException;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 public interface FilmStorage {
 
-    Map<Integer, Film> getFilms();
+    List<Film> getFilms(Integer after, Integer limit);
+
+    void streamFilms(Consumer<Film> consumer);
 
     Film getFilm(Integer id) throws SQLException;
 
     Integer putFilm(Film film);
 
+    List<BatchItemResult> addFilms(Map<Integer, Film> films);
+
     boolean deleteFilm(Integer id);
 
     ResponseDefault addLike(Integer filmId, Integer userId);
@@ -22,4 +28,10 @@ public interface FilmStorage {
     ResponseDefault removeLike(Integer filmId, Integer userId);
 
     List<Film> getPopular(Integer count);
+
+    List<Film> getSimilar(Integer filmId, Integer limit);
+
+    List<Film> getRecommendations(Integer userId, Integer limit);
+
+    void reloadLikes();
 }
\ No newline at end of file
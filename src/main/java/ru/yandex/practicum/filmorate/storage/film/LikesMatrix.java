@@ -0,0 +1,442 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.IdSet;
+import ru.yandex.practicum.filmorate.storage.IntIntMap;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+//класс LikesMatrix хранит в памяти разреженную матрицу лайков фильм x пользователь в обе стороны
+//и для каждого фильма - до MAX_SIMILAR похожих фильмов; совместные лайки всех пар не хранятся (их число растет
+//как сумма квадратов числа лайков пользователей), а считаются только для пересчитываемого фильма;
+//списки похожих строятся параллельно при загрузке, а после лайка устаревшими отмечаются лайкнутый фильм
+//и остальные фильмы пользователя, и их списки пересчитываются в фоновом потоке, поэтому запрос похожих
+//только читает готовый список; лайки не ждут блокировку: изменения копятся в очереди и применяются пакетом тем
+//потоком, которому удалось взять блокировку записи, а чтение сначала применяет накопленные изменения
+@Slf4j
+@Component
+public class LikesMatrix {
+    private static final int MAX_NEIGHBORS = 100;
+    private static final int MAX_SIMILAR = 100;
+    private static final int SCORE_CHUNK = 16;
+    private static final int SIMILAR_CHUNK = 64;
+    private static final int REFRESH_BATCH = 1024;
+
+    private final Map<Integer, IdSet> filmUsers = new HashMap<>();
+    private final Map<Integer, IdSet> userFilms = new HashMap<>();
+    private final Map<Integer, int[]> similar = new ConcurrentHashMap<>();
+    private final Set<Integer> staleSimilar = new HashSet<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Queue<Change> changes = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean refreshScheduled = new AtomicBoolean();
+    private final ExecutorService refresher = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "similar-films-refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    //лайки передаются парами filmIds[i], userIds[i] в порядке ORDER BY film_id, user_id; изменения из очереди
+    //применяются поверх загруженных: лайк, уже попавший в загрузку, применяется повторно без эффекта
+    public void load(int[] filmIds, int[] userIds, int size) {
+        lock.writeLock().lock();
+        try {
+            filmUsers.clear();
+            userFilms.clear();
+            for (int i = 0; i < size; i++) {
+                filmUsers.computeIfAbsent(filmIds[i], id -> new IdSet()).addInt(userIds[i]);
+                userFilms.computeIfAbsent(userIds[i], id -> new IdSet()).addInt(filmIds[i]);
+            }
+            applyChanges();
+
+            int[] films = filmUsers.keySet().stream().mapToInt(Integer::intValue).toArray();
+            similar.clear();
+            staleSimilar.clear();
+            ForkJoinPool.commonPool().invoke(new SimilarTask(films, 0, films.length));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        refresher.shutdownNow();
+    }
+
+    public void addLike(int filmId, int userId) {
+        submit(new Change(Change.ADD_LIKE, filmId, userId));
+    }
+
+    public void removeLike(int filmId, int userId) {
+        submit(new Change(Change.REMOVE_LIKE, filmId, userId));
+    }
+
+    public void removeFilm(int filmId) {
+        submit(new Change(Change.REMOVE_FILM, filmId, 0));
+    }
+
+    public void removeUser(int userId) {
+        submit(new Change(Change.REMOVE_USER, 0, userId));
+    }
+
+    //похожие фильмы по коэффициенту Жаккара: |A ∩ B| / |A ∪ B|, где A и B - пользователи, лайкнувшие фильмы;
+    //при равенстве коэффициента выше фильм с меньшим ID; возвращается не больше MAX_SIMILAR фильмов
+    public List<Integer> getSimilar(int filmId, int limit) {
+        int[] neighbors = similar.get(filmId);
+        if (neighbors == null || limit <= 0) {
+            return new ArrayList<>();
+        }
+
+        int size = Math.min(limit, neighbors.length);
+        List<Integer> result = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            result.add(neighbors[i]);
+        }
+        return result;
+    }
+
+    //пересчитывает устаревшие списки похожих фильмов частями по REFRESH_BATCH, отпуская блокировку между частями;
+    //коэффициенты пар, у которых изменилось только число лайков второго фильма, уточняются при следующем
+    //пересчете первого фильма
+    public synchronized void refreshSimilar() {
+        while (true) {
+            lockForRead();
+            try {
+                if (staleSimilar.isEmpty()) {
+                    return;
+                }
+                int[] films = new int[Math.min(REFRESH_BATCH, staleSimilar.size())];
+                int size = 0;
+                for (Integer filmId : staleSimilar) {
+                    if (size == films.length) {
+                        break;
+                    }
+                    films[size++] = filmId;
+                }
+                for (int filmId : films) {
+                    staleSimilar.remove(filmId);
+                }
+                ForkJoinPool.commonPool().invoke(new SimilarTask(films, 0, films.length));
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+    }
+
+    //рекомендации для пользователя: кандидаты в соседи - пользователи из инвертированных списков его фильмов,
+    //соседи ранжируются по коэффициенту Жаккара их лайков, а фильмы соседей, которые пользователь еще не лайкал,
+    //получают сумму коэффициентов лайкнувших их соседей; соседи оцениваются параллельно частями по SCORE_CHUNK
+    public List<Integer> getRecommendations(int userId, int limit) {
+        lockForRead();
+        try {
+            IdSet liked = userFilms.get(userId);
+            if (liked == null || limit <= 0) {
+                return new ArrayList<>();
+            }
+
+            //счетчики общих лайков занимают память по числу кандидатов и освобождаются после запроса
+            int[] candidates = {0};
+            liked.forEachInt(filmId -> candidates[0] += filmUsers.get(filmId).size());
+            IntIntMap common = new IntIntMap(Math.min(candidates[0], userFilms.size()));
+            liked.forEachInt(filmId -> filmUsers.get(filmId).forEachInt(otherId -> {
+                if (otherId != userId) {
+                    common.add(otherId, 1);
+                }
+            }));
+
+            PriorityQueue<Candidate> neighbors = new PriorityQueue<>(MAX_NEIGHBORS + 1);
+            common.forEach((otherId, count) -> {
+                double similarity = (double) count / (liked.size() + userFilms.get(otherId).size() - count);
+                neighbors.add(new Candidate(otherId, similarity));
+                if (neighbors.size() > MAX_NEIGHBORS) {
+                    neighbors.poll();
+                }
+            });
+
+            Candidate[] scored = neighbors.toArray(new Candidate[0]);
+            Map<Integer, Double> scores = ForkJoinPool.commonPool()
+                    .invoke(new ScoreTask(liked, scored, 0, scored.length));
+
+            PriorityQueue<Candidate> top = new PriorityQueue<>(limit + 1);
+            scores.forEach((filmId, score) -> {
+                top.add(new Candidate(filmId, score));
+                if (top.size() > limit) {
+                    top.poll();
+                }
+            });
+
+            List<Integer> recommendations = new ArrayList<>(top.size());
+            while (!top.isEmpty()) {
+                recommendations.add(0, top.poll().id);
+            }
+            return recommendations;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    //владелец блокировки после ее снятия проверяет очередь еще раз, поэтому изменение, добавленное, пока он
+    //применял предыдущие, не останется в очереди; если блокировку держит чтение, изменение применит
+    //следующее чтение или лайк
+    private void submit(Change change) {
+        changes.add(change);
+        while (!changes.isEmpty() && lock.writeLock().tryLock()) {
+            try {
+                applyChanges();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    //при накопленных изменениях чтение применяет их и понижает блокировку записи до блокировки чтения
+    private void lockForRead() {
+        if (changes.isEmpty()) {
+            lock.readLock().lock();
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            applyChanges();
+            lock.readLock().lock();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void applyChanges() {
+        applyQueuedChanges();
+        if (!staleSimilar.isEmpty() && refreshScheduled.compareAndSet(false, true)) {
+            try {
+                refresher.execute(() -> {
+                    refreshScheduled.set(false);
+                    try {
+                        refreshSimilar();
+                    } catch (RuntimeException e) {
+                        log.warn("Похожие фильмы не пересчитаны: " + e.getMessage());
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                refreshScheduled.set(false);
+            }
+        }
+    }
+
+    private void applyQueuedChanges() {
+        Change change;
+        while ((change = changes.poll()) != null) {
+            switch (change.type) {
+                case Change.ADD_LIKE:
+                    applyAddLike(change.filmId, change.userId);
+                    break;
+                case Change.REMOVE_LIKE:
+                    applyRemoveLike(change.filmId, change.userId);
+                    break;
+                case Change.REMOVE_FILM:
+                    IdSet users = filmUsers.get(change.filmId);
+                    if (users != null) {
+                        for (int userId : users.toIntArray()) {
+                            applyRemoveLike(change.filmId, userId);
+                        }
+                    }
+                    break;
+                default:
+                    IdSet films = userFilms.get(change.userId);
+                    if (films != null) {
+                        for (int filmId : films.toIntArray()) {
+                            applyRemoveLike(filmId, change.userId);
+                        }
+                    }
+            }
+        }
+    }
+
+    private void applyAddLike(int filmId, int userId) {
+        IdSet films = userFilms.computeIfAbsent(userId, id -> new IdSet());
+        if (films.containsInt(filmId)) {
+            return;
+        }
+        films.addInt(filmId);
+        markStale(films);
+        filmUsers.computeIfAbsent(filmId, id -> new IdSet()).addInt(userId);
+    }
+
+    private void applyRemoveLike(int filmId, int userId) {
+        IdSet films = userFilms.get(userId);
+        if (films == null || !films.removeInt(filmId)) {
+            return;
+        }
+        staleSimilar.add(filmId);
+        markStale(films);
+        IdSet users = filmUsers.get(filmId);
+        users.removeInt(userId);
+        if (users.isEmpty()) {
+            filmUsers.remove(filmId);
+        }
+        if (films.isEmpty()) {
+            userFilms.remove(userId);
+        }
+    }
+
+    //у фильмов пользователя изменилось пересечение с лайкнутым или разлайкнутым фильмом
+    private void markStale(IdSet films) {
+        films.forEachInt(staleSimilar::add);
+    }
+
+    //до MAX_SIMILAR фильмов с наибольшим коэффициентом Жаккара; совместные лайки считаются обходом фильмов
+    //пользователей, лайкнувших filmId, в хеш-таблице по числу кандидатов
+    private int[] rankSimilar(int filmId) {
+        IdSet users = filmUsers.get(filmId);
+        if (users == null) {
+            return null;
+        }
+        int likes = users.size();
+
+        int[] candidates = {0};
+        users.forEachInt(userId -> candidates[0] += userFilms.get(userId).size());
+        IntIntMap common = new IntIntMap(Math.min(candidates[0], filmUsers.size()));
+        users.forEachInt(userId -> userFilms.get(userId).forEachInt(otherId -> {
+            if (otherId != filmId) {
+                common.add(otherId, 1);
+            }
+        }));
+
+        PriorityQueue<Candidate> top = new PriorityQueue<>(MAX_SIMILAR + 1);
+        common.forEach((otherId, count) -> {
+            double score = (double) count / (likes + filmUsers.get(otherId).size() - count);
+            top.add(new Candidate(otherId, score));
+            if (top.size() > MAX_SIMILAR) {
+                top.poll();
+            }
+        });
+
+        int[] ranked = new int[top.size()];
+        for (int i = ranked.length - 1; i >= 0; i--) {
+            ranked[i] = top.poll().id;
+        }
+        return ranked;
+    }
+
+    //списки похожих независимы, поэтому диапазон фильмов делится пополам до SIMILAR_CHUNK фильмов;
+    //задачи только читают filmUsers и userFilms, а готовые списки кладут в similar
+    private final class SimilarTask extends RecursiveAction {
+        private final int[] films;
+        private final int from;
+        private final int to;
+
+        private SimilarTask(int[] films, int from, int to) {
+            this.films = films;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > SIMILAR_CHUNK) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new SimilarTask(films, from, middle), new SimilarTask(films, middle, to));
+                return;
+            }
+            for (int i = from; i < to; i++) {
+                int[] ranked = rankSimilar(films[i]);
+                if (ranked == null || ranked.length == 0) {
+                    similar.remove(films[i]);
+                } else {
+                    similar.put(films[i], ranked);
+                }
+            }
+        }
+    }
+
+    //фильмы соседей из диапазона [from, to) с суммой коэффициентов соседей, которые их лайкнули
+    private final class ScoreTask extends RecursiveTask<Map<Integer, Double>> {
+        private final IdSet liked;
+        private final Candidate[] neighbors;
+        private final int from;
+        private final int to;
+
+        private ScoreTask(IdSet liked, Candidate[] neighbors, int from, int to) {
+            this.liked = liked;
+            this.neighbors = neighbors;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Map<Integer, Double> compute() {
+            if (to - from > SCORE_CHUNK) {
+                int middle = (from + to) >>> 1;
+                ScoreTask right = new ScoreTask(liked, neighbors, middle, to);
+                right.fork();
+                Map<Integer, Double> scores = new ScoreTask(liked, neighbors, from, middle).compute();
+                right.join().forEach((filmId, score) -> scores.merge(filmId, score, Double::sum));
+                return scores;
+            }
+            Map<Integer, Double> scores = new HashMap<>();
+            for (int i = from; i < to; i++) {
+                double similarity = neighbors[i].score;
+                userFilms.get(neighbors[i].id).forEachInt(filmId -> {
+                    if (!liked.containsInt(filmId)) {
+                        scores.merge(filmId, similarity, Double::sum);
+                    }
+                });
+            }
+            return scores;
+        }
+    }
+
+    //изменение матрицы в очереди; для REMOVE_FILM не используется userId, для REMOVE_USER - filmId
+    private static final class Change {
+        private static final int ADD_LIKE = 0;
+        private static final int REMOVE_LIKE = 1;
+        private static final int REMOVE_FILM = 2;
+        private static final int REMOVE_USER = 3;
+
+        private final int type;
+        private final int filmId;
+        private final int userId;
+
+        private Change(int type, int filmId, int userId) {
+            this.type = type;
+            this.filmId = filmId;
+            this.userId = userId;
+        }
+    }
+
+    //кандидат - фильм или пользователь с оценкой; при равенстве оценок выше меньший ID
+    private static final class Candidate implements Comparable<Candidate> {
+        private final int id;
+        private final double score;
+
+        private Candidate(int id, double score) {
+            this.id = id;
+            this.score = score;
+        }
+
+        //в корне очереди - худший из отобранных кандидатов
+        @Override
+        public int compareTo(Candidate other) {
+            int byScore = Double.compare(score, other.score);
+            return (byScore != 0) ? byScore : Integer.compare(other.id, id);
+        }
+    }
+}
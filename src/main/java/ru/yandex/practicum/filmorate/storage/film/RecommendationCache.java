@@ -0,0 +1,52 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.storage.CacheRegistry;
+import ru.yandex.practicum.filmorate.storage.SegmentedLruCache;
+
+import java.util.List;
+
+//класс RecommendationCache - ограниченный кеш рекомендаций фильмов по ID пользователя;
+//запись пользователя сбрасывается, когда он ставит или убирает лайк; блокировки кеша разделены по полосам,
+//поэтому сброс записи после лайка не ждет чтения рекомендаций других пользователей
+@Component
+public class RecommendationCache {
+    private final SegmentedLruCache<Integer, Entry> entries;
+
+    public RecommendationCache(CacheRegistry cacheRegistry,
+                               @Value("${filmorate.recommendations.cache-size:10000}") int capacity) {
+        this.entries = cacheRegistry.register("recommendations", new SegmentedLruCache<>(capacity));
+    }
+
+    //рекомендации, посчитанные для большего limit, подходят и для меньшего
+    public List<Integer> get(Integer userId, int limit) {
+        Entry entry = entries.get(userId, cached -> cached.limit >= limit || cached.filmIds.size() < cached.limit);
+        if (entry == null) {
+            return null;
+        }
+        return entry.filmIds.subList(0, Math.min(limit, entry.filmIds.size()));
+    }
+
+    public void put(Integer userId, int limit, List<Integer> filmIds) {
+        entries.put(userId, new Entry(limit, List.copyOf(filmIds)));
+    }
+
+    public void invalidate(Integer userId) {
+        entries.invalidate(userId);
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    private static final class Entry {
+        private final int limit;
+        private final List<Integer> filmIds;
+
+        private Entry(int limit, List<Integer> filmIds) {
+            this.limit = limit;
+            this.filmIds = filmIds;
+        }
+    }
+}
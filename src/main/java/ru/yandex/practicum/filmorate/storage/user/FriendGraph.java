@@ -0,0 +1,358 @@
+package ru.yandex.practicum.filmorate.storage.user;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.storage.IntIntMap;
+
+import javax.annotation.PreDestroy;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+//класс FriendGraph хранит в памяти граф дружбы (строки таблицы friends: user_id -> friend_id)
+//в формате CSR: друзья пользователя id лежат в neighbors[offsets[id]..offsets[id + 1]) по возрастанию;
+//измененные после загрузки списки хранятся отдельно в журнале изменений и вливаются в CSR при его заполнении;
+//новый CSR строится в отдельном потоке по копии журнала, поэтому добавление и удаление друзей не ждут
+//перестроения, а порог журнала растет с числом пользователей, чтобы перестроения большого графа были редкими
+@Slf4j
+@Component
+public class FriendGraph {
+    private static final int[] EMPTY = new int[0];
+    private static final int MIN_DELTA_ROWS = 1024;
+    private static final int DELTA_ROWS_SHARE = 64;
+
+    private volatile Snapshot snapshot = new Snapshot(new int[]{0}, EMPTY);
+    private final Map<Integer, int[]> delta = new ConcurrentHashMap<>();
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "friend-graph-compact");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private boolean compacting;
+    private long generation;
+
+    public synchronized void load(Builder builder) {
+        snapshot = builder.build();
+        delta.clear();
+        generation++;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        compactor.shutdownNow();
+    }
+
+    public int[] getFriends(int userId) {
+        Row row = row(userId);
+        return Arrays.copyOfRange(row.ids, row.from, row.to);
+    }
+
+    public boolean hasFriend(int userId, int friendId) {
+        Row row = row(userId);
+        return Arrays.binarySearch(row.ids, row.from, row.to, friendId) >= 0;
+    }
+
+    //пересечение отсортированных списков друзей за один линейный проход
+    public int[] getCommonFriends(int firstId, int secondId) {
+        Row first = row(firstId);
+        Row second = row(secondId);
+
+        int[] common = new int[Math.min(first.size(), second.size())];
+        int size = 0;
+        int i = first.from;
+        int j = second.from;
+        while (i < first.to && j < second.to) {
+            int a = first.ids[i];
+            int b = second.ids[j];
+            if (a == b) {
+                common[size++] = a;
+                i++;
+                j++;
+            } else if (a < b) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return Arrays.copyOf(common, size);
+    }
+
+    //возможные друзья - пользователи на расстоянии двух шагов, которых userId еще не добавлял, упорядоченные
+    //по количеству общих друзей (DESC) и ID (ASC); счетчики хранятся в хеш-таблице по числу кандидатов,
+    //а лучшие limit кандидатов отбираются ограниченной кучей; дружба подтверждена, если есть обратное ребро
+    public int[] getSuggestions(int userId, int limit, boolean includeUnconfirmed) {
+        Row friends = row(userId);
+        int candidates = 0;
+        for (int i = friends.from; i < friends.to; i++) {
+            candidates += row(friends.ids[i]).size();
+        }
+        IntIntMap counts = new IntIntMap(candidates);
+
+        for (int i = friends.from; i < friends.to; i++) {
+            int friendId = friends.ids[i];
+            if (!includeUnconfirmed && !hasFriend(friendId, userId)) {
+                continue;
+            }
+            Row friendsOfFriend = row(friendId);
+            for (int j = friendsOfFriend.from; j < friendsOfFriend.to; j++) {
+                int candidateId = friendsOfFriend.ids[j];
+                if (!includeUnconfirmed && !hasFriend(candidateId, friendId)) {
+                    continue;
+                }
+                counts.add(candidateId, 1);
+            }
+        }
+
+        long[] heap = new long[Math.max(limit, 0)];
+        int[] heapSizes = {0};
+        counts.forEach((candidateId, mutual) -> {
+            if (limit <= 0 || candidateId == userId
+                    || Arrays.binarySearch(friends.ids, friends.from, friends.to, candidateId) >= 0) {
+                return;
+            }
+            long key = rankKey(candidateId, mutual);
+            if (heapSizes[0] < limit) {
+                heap[heapSizes[0]] = key;
+                siftUp(heap, heapSizes[0]++);
+            } else if (key > heap[0]) {
+                heap[0] = key;
+                siftDown(heap, heapSizes[0]);
+            }
+        });
+
+        int heapSize = heapSizes[0];
+        int[] suggestions = new int[heapSize];
+        for (int k = heapSize - 1; k >= 0; k--) {
+            suggestions[k] = Integer.MAX_VALUE - (int) (heap[0] & 0xFFFFFFFFL);
+            heap[0] = heap[--heapSize];
+            siftDown(heap, heapSize);
+        }
+        return suggestions;
+    }
+
+    public synchronized void addFriend(int userId, int friendId) {
+        int[] row = getFriends(userId);
+        int position = Arrays.binarySearch(row, friendId);
+        if (position >= 0) {
+            return;
+        }
+        position = -position - 1;
+        int[] changed = new int[row.length + 1];
+        System.arraycopy(row, 0, changed, 0, position);
+        changed[position] = friendId;
+        System.arraycopy(row, position, changed, position + 1, row.length - position);
+        putRow(userId, changed);
+    }
+
+    public synchronized void removeFriend(int userId, int friendId) {
+        int[] row = getFriends(userId);
+        int position = Arrays.binarySearch(row, friendId);
+        if (position < 0) {
+            return;
+        }
+        int[] changed = new int[row.length - 1];
+        System.arraycopy(row, 0, changed, 0, position);
+        System.arraycopy(row, position + 1, changed, position, row.length - position - 1);
+        putRow(userId, changed);
+    }
+
+    //при удалении пользователя БД каскадно удаляет его дружбу в обе стороны, поэтому он убирается из списков
+    //своих друзей и followers - пользователей, добавивших его в друзья без взаимности (ребра friend_id -> user_id
+    //граф не хранит, их передает вызывающий)
+    public synchronized void removeUser(int userId, int[] followers) {
+        for (int friendId : getFriends(userId)) {
+            removeFriend(friendId, userId);
+        }
+        for (int followerId : followers) {
+            removeFriend(followerId, userId);
+        }
+        putRow(userId, EMPTY);
+    }
+
+    private int rowCount() {
+        int rows = snapshot.offsets.length - 1;
+        for (Integer id : delta.keySet()) {
+            rows = Math.max(rows, id + 1);
+        }
+        return rows;
+    }
+
+    //журнал читается раньше CSR: если его строку успели влить в новый CSR, она уже будет в snapshot
+    private Row row(int userId) {
+        int[] row = delta.get(userId);
+        if (row != null) {
+            return new Row(row, 0, row.length);
+        }
+        Snapshot current = snapshot;
+        return new Row(current.neighbors, current.from(userId), current.to(userId));
+    }
+
+    //старшие 32 бита - количество общих друзей, младшие - инвертированный ID: больший ключ - лучший кандидат
+    private static long rankKey(int userId, int mutual) {
+        return ((long) mutual << 32) | (Integer.MAX_VALUE - userId);
+    }
+
+    //куча с минимальным ключом в корне: в ней остаются limit лучших кандидатов
+    private static void siftUp(long[] heap, int index) {
+        long key = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (heap[parent] <= key) {
+                break;
+            }
+            heap[index] = heap[parent];
+            index = parent;
+        }
+        heap[index] = key;
+    }
+
+    private static void siftDown(long[] heap, int size) {
+        if (size == 0) {
+            return;
+        }
+        long key = heap[0];
+        int index = 0;
+        int child;
+        while ((child = 2 * index + 1) < size) {
+            if (child + 1 < size && heap[child + 1] < heap[child]) {
+                child++;
+            }
+            if (key <= heap[child]) {
+                break;
+            }
+            heap[index] = heap[child];
+            index = child;
+        }
+        heap[index] = key;
+    }
+
+    private void putRow(int userId, int[] row) {
+        delta.put(userId, row);
+        if (!compacting && delta.size() > Math.max(MIN_DELTA_ROWS, snapshot.offsets.length / DELTA_ROWS_SHARE)) {
+            compactInBackground();
+        }
+    }
+
+    //вызывается под блокировкой графа: журнал копируется целиком, а строки, измененные во время перестроения,
+    //остаются в журнале и попадут в следующий CSR
+    private void compactInBackground() {
+        compacting = true;
+        Snapshot current = snapshot;
+        Map<Integer, int[]> frozen = new HashMap<>(delta);
+        int rows = rowCount();
+        long startedGeneration = generation;
+        try {
+            compactor.execute(() -> {
+                try {
+                    publish(build(current, frozen, rows), frozen, startedGeneration);
+                } catch (RuntimeException e) {
+                    log.warn("Граф дружбы не перестроен: " + e.getMessage());
+                    finishCompaction();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            compacting = false;
+        }
+    }
+
+    //новый CSR публикуется раньше, чем из журнала удаляются влитые в него строки, поэтому читатель всегда видит
+    //актуальный список; строка удаляется, только если с момента копирования ее не заменили; результат перестроения,
+    //начатого до повторной загрузки графа, отбрасывается
+    private synchronized void publish(Snapshot rebuilt, Map<Integer, int[]> frozen, long startedGeneration) {
+        compacting = false;
+        if (startedGeneration != generation) {
+            return;
+        }
+        snapshot = rebuilt;
+        frozen.forEach(delta::remove);
+    }
+
+    private synchronized void finishCompaction() {
+        compacting = false;
+    }
+
+    private static Snapshot build(Snapshot current, Map<Integer, int[]> frozen, int rows) {
+        Builder builder = new Builder();
+        for (int id = 0; id < rows; id++) {
+            int[] row = frozen.get(id);
+            if (row != null) {
+                for (int friendId : row) {
+                    builder.addEdge(id, friendId);
+                }
+            } else {
+                for (int i = current.from(id); i < current.to(id); i++) {
+                    builder.addEdge(id, current.neighbors[i]);
+                }
+            }
+        }
+
+        return builder.build();
+    }
+
+    private static final class Row {
+        private final int[] ids;
+        private final int from;
+        private final int to;
+
+        private Row(int[] ids, int from, int to) {
+            this.ids = ids;
+            this.from = from;
+            this.to = to;
+        }
+
+        private int size() {
+            return to - from;
+        }
+    }
+
+    private static final class Snapshot {
+        private final int[] offsets;
+        private final int[] neighbors;
+
+        private Snapshot(int[] offsets, int[] neighbors) {
+            this.offsets = offsets;
+            this.neighbors = neighbors;
+        }
+
+        private int from(int userId) {
+            return (userId >= 0 && userId < offsets.length - 1) ? offsets[userId] : 0;
+        }
+
+        private int to(int userId) {
+            return (userId >= 0 && userId < offsets.length - 1) ? offsets[userId + 1] : 0;
+        }
+    }
+
+    //ребра добавляются в порядке ORDER BY user_id, friend_id
+    public static class Builder {
+        private int[] offsets = new int[]{0};
+        private int[] neighbors = new int[16];
+        private int rows;
+        private int size;
+
+        public void addEdge(int userId, int friendId) {
+            if (userId < rows - 1 || userId < 0) {
+                throw new IllegalArgumentException("Ребра графа дружбы должны добавляться по возрастанию user_id");
+            }
+            while (rows <= userId) {
+                if (rows + 1 >= offsets.length) {
+                    offsets = Arrays.copyOf(offsets, Math.max(16, offsets.length * 2));
+                }
+                offsets[++rows] = size;
+            }
+            if (size == neighbors.length) {
+                neighbors = Arrays.copyOf(neighbors, neighbors.length * 2);
+            }
+            neighbors[size++] = friendId;
+            offsets[rows] = size;
+        }
+
+        private Snapshot build() {
+            return new Snapshot(Arrays.copyOf(offsets, rows + 1), Arrays.copyOf(neighbors, size));
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package ru.yandex.practicum.filmorate.storage.user;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.CacheRegistry;
+import ru.yandex.practicum.filmorate.storage.EntityVersions;
+import ru.yandex.practicum.filmorate.storage.SegmentedLruCache;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+//класс UserCache - кеш пользователей для getUser и проверок существования: найденный пользователь хранится
+//вместе с его версией из EntityVersions, а отсутствие пользователя запоминается на negativeTtl;
+//ID выдаются автоинкрементом, и все пути создания пользователя сбрасывают запись, поэтому TTL - только страховка;
+//закешированный пользователь общий для всех запросов и не должен изменяться вызывающим кодом
+@Component
+public class UserCache {
+    private final EntityVersions versions;
+    private final SegmentedLruCache<Integer, Entry> users;
+    private final long negativeTtlNanos;
+
+    public UserCache(EntityVersions versions, CacheRegistry cacheRegistry,
+                     @Value("${filmorate.users.cache-size:10000}") int capacity,
+                     @Value("${filmorate.users.negative-ttl-ms:5000}") long negativeTtlMs) {
+        this.versions = versions;
+        this.users = cacheRegistry.register("users", new SegmentedLruCache<>(capacity));
+        this.negativeTtlNanos = TimeUnit.MILLISECONDS.toNanos(negativeTtlMs);
+    }
+
+    //loader возвращает null, если пользователя с таким ID нет
+    public User get(Integer id, Function<Integer, User> loader) {
+        String version = versions.userTag(id);
+        long now = System.nanoTime();
+        Entry entry = users.get(id, cached -> (cached.user == null)
+                ? now - cached.loadedAt < negativeTtlNanos
+                : cached.version.equals(version));
+        if (entry != null) {
+            return entry.user;
+        }
+
+        //пользователь, изменившийся во время загрузки, не кешируется: он мог быть прочитан до коммита изменения
+        User user = loader.apply(id);
+        if (version.equals(versions.userTag(id))) {
+            users.put(id, new Entry(version, user, now));
+        }
+        return user;
+    }
+
+    public void invalidate(Integer id) {
+        users.invalidate(id);
+    }
+
+    public void clear() {
+        users.clear();
+    }
+
+    private static final class Entry {
+        private final String version;
+        private final User user;
+        private final long loadedAt;
+
+        private Entry(String version, User user, long loadedAt) {
+            this.version = version;
+            this.user = user;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
@@ -1,26 +1,36 @@
 package ru.yandex.practicum.filmorate.storage.user;
 
+import ru.yandex.practicum.filmorate.model.BatchItemResult;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.service.ResponseDefault;
 
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 public interface UserStorage {
 
-    Map<Integer, User> getUsers();
+    List<User> getUsers(Integer after, Integer limit);
+
+    void streamUsers(Consumer<User> consumer);
 
     User getUser(Integer id);
 
     Integer putUser(User user);
 
+    List<BatchItemResult> addUsers(Map<Integer, User> users);
+
     boolean deleteUser(Integer id);
 
     List<User> getUserFriends(Integer userId);
 
     List<User> getCommonFriends(Integer firstId, Integer secondId);
 
+    List<User> getSuggestions(Integer userId, Integer limit);
+
     ResponseDefault addFriend(Integer userId, Integer friendsId);
 
     ResponseDefault removeFriend(Integer userId, Integer friendsId);
+
+    void reloadFriends();
 }
\ No newline at end of file
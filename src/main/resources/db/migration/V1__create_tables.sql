@@ -59,4 +59,4 @@ CREATE TABLE IF NOT EXISTS LIKES (
 	LAST_UPDATE TIMESTAMP NOT NULL,
 	CONSTRAINT LIKES_FK FOREIGN KEY (FILM_ID) REFERENCES FILMS(FILM_ID) ON DELETE CASCADE ON UPDATE CASCADE,
 	CONSTRAINT LIKES_FK_1 FOREIGN KEY (USER_ID) REFERENCES USERS(USER_ID) ON DELETE CASCADE ON UPDATE CASCADE
-);
\ No newline at end of file
+);
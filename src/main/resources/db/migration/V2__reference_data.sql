@@ -58,4 +58,4 @@ INSERT INTO PUBLIC.STATUSES (STATUS_ID,STATUS_NAME)
 INSERT INTO PUBLIC.STATUSES (STATUS_ID,STATUS_NAME)
 	SELECT * FROM (SELECT 2 AS STATUS_ID, 'Друзья (дружба подтверждена)' AS STATUS_NAME) AS TEMP
 	WHERE NOT EXISTS (SELECT STATUS_ID FROM PUBLIC.STATUSES WHERE STATUS_ID = 2)
-	LIMIT 1;
\ No newline at end of file
+	LIMIT 1;
@@ -0,0 +1,7 @@
+ALTER TABLE FILMS ADD COLUMN IF NOT EXISTS LIKES_COUNT INTEGER DEFAULT 0 NOT NULL;
+
+CREATE INDEX IF NOT EXISTS FILMS_LIKES_COUNT_IDX ON FILMS (LIKES_COUNT DESC, FILM_ID);
+
+UPDATE FILMS AS F
+	SET LIKES_COUNT = (SELECT COUNT(*) FROM LIKES AS L WHERE L.FILM_ID = F.FILM_ID)
+	WHERE LIKES_COUNT <> (SELECT COUNT(*) FROM LIKES AS L WHERE L.FILM_ID = F.FILM_ID);
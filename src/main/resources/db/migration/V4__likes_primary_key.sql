@@ -0,0 +1,9 @@
+-- повторные лайки удаляются до создания первичного ключа
+DELETE FROM LIKES
+	WHERE _ROWID_ NOT IN (SELECT MIN(_ROWID_) FROM LIKES GROUP BY FILM_ID, USER_ID);
+
+ALTER TABLE LIKES ADD CONSTRAINT IF NOT EXISTS LIKES_PK PRIMARY KEY (FILM_ID, USER_ID);
+
+UPDATE FILMS AS F
+	SET LIKES_COUNT = (SELECT COUNT(*) FROM LIKES AS L WHERE L.FILM_ID = F.FILM_ID)
+	WHERE LIKES_COUNT <> (SELECT COUNT(*) FROM LIKES AS L WHERE L.FILM_ID = F.FILM_ID);
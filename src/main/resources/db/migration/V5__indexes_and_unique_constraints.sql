@@ -0,0 +1,24 @@
+-- повторяющиеся связи удаляются до создания первичных ключей
+DELETE FROM FILM_GENRES
+	WHERE _ROWID_ NOT IN (SELECT MIN(_ROWID_) FROM FILM_GENRES GROUP BY FILM_ID, GENRE_ID);
+
+ALTER TABLE FILM_GENRES ADD CONSTRAINT IF NOT EXISTS FILM_GENRES_PK PRIMARY KEY (FILM_ID, GENRE_ID);
+
+DELETE FROM FRIENDS
+	WHERE _ROWID_ NOT IN (SELECT MIN(_ROWID_) FROM FRIENDS GROUP BY USER_ID, FRIEND_ID);
+
+ALTER TABLE FRIENDS ADD CONSTRAINT IF NOT EXISTS FRIENDS_PK PRIMARY KEY (USER_ID, FRIEND_ID);
+
+-- выборки "кто поставил лайк" и "у кого пользователь в друзьях"
+CREATE INDEX IF NOT EXISTS LIKES_USER_IDX ON LIKES (USER_ID, FILM_ID);
+
+CREATE INDEX IF NOT EXISTS FRIENDS_FRIEND_IDX ON FRIENDS (FRIEND_ID, USER_ID);
+
+-- проверки уникальности email, login и названия фильма; повторы не удаляются: если в базе есть пользователи
+-- с одинаковым email или login или фильмы с одинаковым названием, миграция останавливается ошибкой уникальности
+-- с повторяющимся значением, и такие записи нужно объединить вручную до повторного запуска
+ALTER TABLE USERS ADD CONSTRAINT IF NOT EXISTS USERS_EMAIL_UQ UNIQUE (EMAIL);
+
+ALTER TABLE USERS ADD CONSTRAINT IF NOT EXISTS USERS_LOGIN_UQ UNIQUE (LOGIN);
+
+ALTER TABLE FILMS ADD CONSTRAINT IF NOT EXISTS FILMS_NAME_UQ UNIQUE (FILM_NAME);
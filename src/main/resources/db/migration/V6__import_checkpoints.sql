@@ -0,0 +1,8 @@
+-- сколько строк входных данных каждого задания импорта уже записано, для продолжения после сбоя
+CREATE TABLE IF NOT EXISTS IMPORT_CHECKPOINTS (
+	JOB_ID CHARACTER VARYING(64) NOT NULL,
+	ENTITY CHARACTER VARYING(10) NOT NULL,
+	ROWS_DONE BIGINT NOT NULL,
+	LAST_UPDATE TIMESTAMP NOT NULL,
+	CONSTRAINT IMPORT_CHECKPOINTS_PK PRIMARY KEY (JOB_ID)
+);
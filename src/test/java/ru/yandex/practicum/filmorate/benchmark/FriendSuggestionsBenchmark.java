@@ -0,0 +1,87 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import ru.yandex.practicum.filmorate.storage.user.FriendGraph;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+//класс FriendSuggestionsBenchmark измеряет задержку GET /users/{id}/suggestions на графе из 1 000 000 пользователей:
+//обычный пользователь со средним числом друзей и пользователь с HUB_FRIENDS друзьями;
+//запуск: mvn test-compile exec:java -Dexec.classpathScope=test
+//        -Dexec.mainClass=ru.yandex.practicum.filmorate.benchmark.FriendSuggestionsBenchmark
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx2g"})
+public class FriendSuggestionsBenchmark {
+    private static final int USERS = 1_000_000;
+    private static final int HUB_USER = 1;
+    private static final int HUB_FRIENDS = 5_000;
+    private static final int TYPICAL_USER = 500_000;
+
+    @Param({"20"})
+    private int averageFriends;
+
+    @Param({"true", "false"})
+    private boolean includeUnconfirmed;
+
+    private FriendGraph graph;
+
+    @Setup
+    public void setUp() {
+        SplittableRandom random = new SplittableRandom(42);
+        FriendGraph.Builder builder = new FriendGraph.Builder();
+
+        for (int userId = 1; userId <= USERS; userId++) {
+            int friends = (userId == HUB_USER) ? HUB_FRIENDS : random.nextInt(averageFriends * 2 + 1);
+            int[] row = new int[friends];
+            for (int i = 0; i < friends; i++) {
+                row[i] = 1 + random.nextInt(USERS);
+            }
+            Arrays.sort(row);
+            int previous = 0;
+            for (int friendId : row) {
+                if (friendId != previous && friendId != userId) {
+                    builder.addEdge(userId, friendId);
+                }
+                previous = friendId;
+            }
+        }
+
+        graph = new FriendGraph();
+        graph.load(builder);
+    }
+
+    @Benchmark
+    public int[] typicalUser() {
+        return graph.getSuggestions(TYPICAL_USER, 10, includeUnconfirmed);
+    }
+
+    @Benchmark
+    public int[] hubUser() {
+        return graph.getSuggestions(HUB_USER, 10, includeUnconfirmed);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(FriendSuggestionsBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -9,16 +9,22 @@ import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabas
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.web.client.TestRestTemplate;
 import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.annotation.DirtiesContext;
+import ru.yandex.practicum.filmorate.dao.impl.FilmDbStorage;
 import ru.yandex.practicum.filmorate.exception.ResponseError;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.Genre;
 import ru.yandex.practicum.filmorate.model.Mpa;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.service.ResponseDefault;
+import ru.yandex.practicum.filmorate.storage.EntityVersions;
+import ru.yandex.practicum.filmorate.storage.film.LikesMatrix;
 
 import java.net.URI;
 import java.time.LocalDate;
@@ -56,6 +62,18 @@ public class FilmControllerTests {
     @Autowired
     private TestRestTemplate restTemplate;
 
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private FilmDbStorage filmStorage;
+
+    @Autowired
+    private LikesMatrix likesMatrix;
+
+    @Autowired
+    private EntityVersions versions;
+
     @BeforeEach
     public void beforeEach() {
         url = URI.create("http://localhost:" + port + "/films");
@@ -200,6 +218,93 @@ public class FilmControllerTests {
         assertEquals(filmsList.get(1), film2);
     }
 
+    @Test
+    public void addFilms_shouldCreateValidFilmsAndReportErrorsPerItem_whenBatchRequest() {
+        restTemplate.postForLocation(url, film);
+        film2.setName("");
+        film3.setGenres(Set.of(genre1, genre2));
+        film4.setName(film1.getName());
+
+        ResponseEntity<Map[]> batchResponse = restTemplate.postForEntity(url.resolve("/films/batch"),
+                List.of(film1, film, film2, film3, film4), Map[].class);
+        ResponseEntity<Film> getFilm3Response = restTemplate.getForEntity(url.resolve("/films/3"), Film.class);
+
+        assertSame(batchResponse.getStatusCode(), HttpStatus.OK);
+        assertEquals(batchResponse.getBody().length, 5);
+        assertEquals(batchResponse.getBody()[0].get("id"), 2);
+        assertEquals(batchResponse.getBody()[0].get("status"), "CREATED");
+        assertEquals(batchResponse.getBody()[1].get("status"), "CONFLICT");
+        assertEquals(batchResponse.getBody()[1].get("message"), "Фильм FilmName уже существует");
+        assertEquals(batchResponse.getBody()[2].get("status"), "BAD_REQUEST");
+        assertEquals(batchResponse.getBody()[2].get("message"), "Имя не должно быть пустым");
+        assertEquals(batchResponse.getBody()[3].get("id"), 3);
+        assertEquals(batchResponse.getBody()[4].get("status"), "CONFLICT");
+        assertEquals(getFilm3Response.getBody().getName(), film3.getName());
+        assertEquals(getFilm3Response.getBody().getGenres().size(), 2);
+        assertEquals(restTemplate.getForEntity(url, Film[].class).getBody().length, 3);
+    }
+
+    @Test
+    public void addFilms_shouldReturnBadRequest_whenBatchIsEmpty() {
+        ResponseEntity<ResponseError> batchResponse = restTemplate.postForEntity(url.resolve("/films/batch"),
+                List.of(), ResponseError.class);
+
+        assertSame(batchResponse.getStatusCode(), HttpStatus.BAD_REQUEST);
+        assertEquals(batchResponse.getBody().getMessage(), "Размер пакета должен быть от 1 до 1000");
+    }
+
+    @Test
+    public void getFilms_shouldReturnPageWithNextCursor_whenAfterAndLimitSet() {
+        restTemplate.postForLocation(url, film);
+        restTemplate.postForLocation(url, film1);
+        restTemplate.postForLocation(url, film2);
+
+        ResponseEntity<Film[]> firstPage = restTemplate.getForEntity(url.resolve("/films?limit=2"), Film[].class);
+        ResponseEntity<Film[]> lastPage = restTemplate.getForEntity(url.resolve("/films?after="
+                + firstPage.getHeaders().getFirst("X-Next-Cursor") + "&limit=2"), Film[].class);
+
+        assertSame(firstPage.getStatusCode(), HttpStatus.OK);
+        assertEquals(firstPage.getBody().length, 2);
+        assertEquals(firstPage.getBody()[0].getId(), 1);
+        assertEquals(firstPage.getBody()[1].getId(), 2);
+        assertEquals(firstPage.getHeaders().getFirst("X-Next-Cursor"), "2");
+        assertSame(lastPage.getStatusCode(), HttpStatus.OK);
+        assertEquals(lastPage.getBody().length, 1);
+        assertEquals(lastPage.getBody()[0].getId(), 3);
+        assertEquals(lastPage.getHeaders().getFirst("X-Next-Cursor"), null);
+    }
+
+    @Test
+    public void getFilms_shouldReturnBadRequest_whenLimitOutOfRange() {
+        ResponseEntity<ResponseError> getFilmsResponse = restTemplate.getForEntity(url.resolve("/films?limit=0"),
+                ResponseError.class);
+
+        assertSame(getFilmsResponse.getStatusCode(), HttpStatus.BAD_REQUEST);
+        assertEquals(getFilmsResponse.getBody().getMessage(), "Размер страницы должен быть от 1 до 1000");
+    }
+
+    @Test
+    public void getFilms_shouldStreamNdjson_whenNdjsonAccepted() {
+        restTemplate.postForLocation(url, film);
+        restTemplate.postForLocation(url, film1);
+        HttpHeaders ndjsonHeaders = new HttpHeaders();
+        ndjsonHeaders.setAccept(List.of(MediaType.valueOf("application/x-ndjson")));
+        HttpHeaders anyHeaders = new HttpHeaders();
+        anyHeaders.setAccept(List.of(MediaType.ALL));
+
+        ResponseEntity<String> streamResponse = restTemplate.exchange(url, HttpMethod.GET,
+                new HttpEntity<>(ndjsonHeaders), String.class);
+        ResponseEntity<String> anyResponse = restTemplate.exchange(url, HttpMethod.GET,
+                new HttpEntity<>(anyHeaders), String.class);
+        String[] lines = streamResponse.getBody().split("\n");
+
+        assertSame(streamResponse.getStatusCode(), HttpStatus.OK);
+        assertEquals(lines.length, 2);
+        assertThat(lines[0]).startsWith("{").contains("\"id\":1").contains(film.getName());
+        assertThat(lines[1]).startsWith("{").contains("\"id\":2").contains(film1.getName());
+        assertThat(anyResponse.getBody()).startsWith("[");
+    }
+
     @Test
     public void addFilm_shouldReturnBadRequest_whenFilmsNaimIsEmptyOrNull() {
         film1.setName("");
@@ -302,6 +407,123 @@ public class FilmControllerTests {
         assertEquals(getFilmById1response.getBody(), film);
     }
 
+    @Test
+    public void getFilm_shouldReturnNotModifiedUntilFilmChanges_whenIfNoneMatchSent() {
+        restTemplate.postForLocation(url, film);
+        restTemplate.postForLocation(url.resolve("/users"), user);
+        ResponseEntity<Film> firstResponse = restTemplate.getForEntity(url.resolve("/films/1"), Film.class);
+        HttpHeaders conditional = new HttpHeaders();
+        conditional.setIfNoneMatch(firstResponse.getHeaders().getETag());
+
+        ResponseEntity<Film> unchangedResponse = restTemplate.exchange(url.resolve("/films/1"), HttpMethod.GET,
+                new HttpEntity<>(conditional), Film.class);
+        restTemplate.exchange(url.resolve("/films/1/like/1"), HttpMethod.PUT, HttpEntity.EMPTY, ResponseDefault.class);
+        ResponseEntity<Film> likedResponse = restTemplate.exchange(url.resolve("/films/1"), HttpMethod.GET,
+                new HttpEntity<>(conditional), Film.class);
+
+        assertSame(firstResponse.getStatusCode(), HttpStatus.OK);
+        assertSame(unchangedResponse.getStatusCode(), HttpStatus.NOT_MODIFIED);
+        assertEquals(unchangedResponse.getHeaders().getETag(), firstResponse.getHeaders().getETag());
+        assertEquals(unchangedResponse.getBody(), null);
+        assertSame(likedResponse.getStatusCode(), HttpStatus.OK);
+        assertEquals(likedResponse.getBody().getLikes(), Set.of(1));
+        assertThat(likedResponse.getHeaders().getETag()).isNotEqualTo(firstResponse.getHeaders().getETag());
+    }
+
+    @Test
+    public void getFilm_shouldReturnNotFoundAndChangeTagOnReconcile_whenIfNoneMatchSent() {
+        restTemplate.postForLocation(url, film);
+        restTemplate.postForLocation(url.resolve("/users"), user);
+        restTemplate.postForLocation(url.resolve("/users"), user1);
+        restTemplate.put(url.resolve("/films/1/like/1"), null);
+        HttpHeaders missingConditional = new HttpHeaders();
+        missingConditional.setIfNoneMatch(versions.filmTag(7));
+        HttpHeaders conditional = new HttpHeaders();
+        conditional.setIfNoneMatch(restTemplate.getForEntity(url.resolve("/films/1"), Film.class)
+                .getHeaders().getETag());
+
+        ResponseEntity<ResponseError> missingResponse = restTemplate.exchange(url.resolve("/films/7"),
+                HttpMethod.GET, new HttpEntity<>(missingConditional), ResponseError.class);
+        jdbcTemplate.update("INSERT INTO likes (film_id, user_id, last_update) VALUES (1, 2, CURRENT_TIMESTAMP)");
+        filmStorage.reconcileLikesCount();
+        ResponseEntity<Film> reconciledResponse = restTemplate.exchange(url.resolve("/films/1"), HttpMethod.GET,
+                new HttpEntity<>(conditional), Film.class);
+
+        assertSame(missingResponse.getStatusCode(), HttpStatus.NOT_FOUND);
+        assertEquals(missingResponse.getBody().getMessage(), "Фильм с ID: 7 не существует");
+        assertSame(reconciledResponse.getStatusCode(), HttpStatus.OK);
+        assertEquals(reconciledResponse.getBody().getLikesAmount(), 2);
+        assertEquals(reconciledResponse.getBody().getLikes(), Set.of(1, 2));
+    }
+
+    @Test
+    public void getFilm_shouldServeFromCacheAndDropStaleEntries_whenFilmOrLikesChange() {
+        restTemplate.postForLocation(url, film);
+        restTemplate.postForLocation(url.resolve("/users"), user);
+        restTemplate.getForEntity(url.resolve("/films/1"), Film.class);
+        restTemplate.getForEntity(url.resolve("/films/1"), Film.class);
+        Map<String, Number> statsAfterReads = getFilmCacheStats();
+
+        restTemplate.exchange(url.resolve("/films/1/like/1"), HttpMethod.PUT, HttpEntity.EMPTY, ResponseDefault.class);
+        Film likedFilm = restTemplate.getForObject(url.resolve("/films/1"), Film.class);
+        film.setId(1);
+        film.setDescription("Updated description");
+        restTemplate.exchange(url, HttpMethod.PUT, new HttpEntity<>(film), Film.class);
+        Film updatedFilm = restTemplate.getForObject(url.resolve("/films/1"), Film.class);
+        restTemplate.exchange(url.resolve("/users/1"), HttpMethod.DELETE, HttpEntity.EMPTY, ResponseDefault.class);
+        Film filmWithoutUser = restTemplate.getForObject(url.resolve("/films/1"), Film.class);
+
+        assertEquals(statsAfterReads.get("hits").longValue(), 2L);
+        assertEquals(statsAfterReads.get("size").intValue(), 1);
+        assertEquals(likedFilm.getLikes(), Set.of(1));
+        assertEquals(updatedFilm.getDescription(), "Updated description");
+        assertEquals(filmWithoutUser.getLikes(), Set.of());
+    }
+
+    @Test
+    public void getPopular_shouldServeFromFilmCacheAndReloadChangedFilms_whenLiked() {
+        restTemplate.postForLocation(url, film);
+        restTemplate.postForLocation(url, film1);
+        restTemplate.postForLocation(url.resolve("/users"), user);
+        restTemplate.getForObject(url.resolve("/films/popular?count=2"), Film[].class);
+        Map<String, Number> statsAfterFirstRead = getFilmCacheStats();
+        restTemplate.getForObject(url.resolve("/films/popular?count=2"), Film[].class);
+        Map<String, Number> statsAfterSecondRead = getFilmCacheStats();
+
+        restTemplate.put(url.resolve("/films/2/like/1"), null);
+        Film[] popularAfterLike = restTemplate.getForObject(url.resolve("/films/popular?count=2"), Film[].class);
+
+        assertEquals(statsAfterFirstRead.get("size").intValue(), 2);
+        assertEquals(statsAfterSecondRead.get("hits").longValue() - statsAfterFirstRead.get("hits").longValue(), 2L);
+        assertEquals(popularAfterLike[0].getId(), 2);
+        assertEquals(popularAfterLike[0].getLikes(), Set.of(1));
+        assertEquals(popularAfterLike[0].getLikesAmount(), 1);
+        assertEquals(popularAfterLike[1].getId(), 1);
+    }
+
+    @Test
+    public void getFilm_shouldRejectAbsentIdsByFilterAndCountDeletedIds_whenFilmsCreatedAndDeleted() {
+        ResponseEntity<ResponseError> missingResponse = restTemplate.getForEntity(url.resolve("/films/7"),
+                ResponseError.class);
+        restTemplate.postForLocation(url, film);
+        ResponseEntity<Film> createdResponse = restTemplate.getForEntity(url.resolve("/films/1"), Film.class);
+        restTemplate.exchange(url.resolve("/films/1"), HttpMethod.DELETE, HttpEntity.EMPTY, ResponseDefault.class);
+        ResponseEntity<ResponseError> deletedResponse = restTemplate.getForEntity(url.resolve("/films/1"),
+                ResponseError.class);
+        Map<String, Number> stats = (Map<String, Number>) restTemplate.getForObject(
+                url.resolve("/metrics/id-filters"), Map.class).get("films");
+
+        assertSame(missingResponse.getStatusCode(), HttpStatus.NOT_FOUND);
+        assertEquals(missingResponse.getBody().getMessage(), "Фильм с ID: 7 не существует");
+        assertSame(createdResponse.getStatusCode(), HttpStatus.OK);
+        assertSame(deletedResponse.getStatusCode(), HttpStatus.NOT_FOUND);
+        assertEquals(stats.get("insertions").intValue(), 1);
+        assertEquals(stats.get("deletesSinceRebuild").intValue(), 1);
+        assertEquals(stats.get("rejected").longValue(), 1L);
+        assertEquals(stats.get("falsePositives").longValue(), 1L);
+        assertEquals(stats.get("observedFalsePositiveRate").doubleValue(), 0.5);
+    }
+
     @Test
     public void deleteFilm_shouldReturnNotFound_whenFilmWithIdDoesNotExist() {
         ResponseEntity<ResponseError> deleteFilmById3response = restTemplate.exchange(url.resolve("/films/3"),
@@ -338,7 +560,7 @@ public class FilmControllerTests {
                 HttpMethod.PUT, new HttpEntity<>(null), ResponseDefault.class);
 
         assertSame(addLike.getStatusCode(), HttpStatus.OK);
-        assertEquals(addLike.getBody().getMessage(), "Пользователь с ID: 1 поставил like фильму FilmName с ID: 1");
+        assertEquals(addLike.getBody().getMessage(), "Пользователь с ID: 1 поставил like фильму с ID: 1");
     }
 
     @Test
@@ -354,6 +576,41 @@ public class FilmControllerTests {
         assertEquals(addLike.getBody().getMessage(), "Пользователь с ID: 1 уже поставил like фильму FilmName с ID: 1");
     }
 
+    @Test
+    public void getFilm_shouldReturnLikesAsIdArray_whenFilmHasLikes() {
+        restTemplate.postForLocation(url, film);
+        restTemplate.postForLocation(url.resolve("/users"), user);
+        restTemplate.postForLocation(url.resolve("/users"), user1);
+        restTemplate.put(url.resolve("/films/1/like/2"), null);
+        restTemplate.put(url.resolve("/films/1/like/1"), null);
+
+        String filmJson = restTemplate.getForObject(url.resolve("/films/1"), String.class);
+        Film filmResponse = restTemplate.getForObject(url.resolve("/films/1"), Film.class);
+
+        assertThat(filmJson).contains("\"likes\":[1,2]").contains("\"likesAmount\":2");
+        assertEquals(filmResponse.getLikes(), Set.of(1, 2));
+        assertEquals(filmResponse.getLikesAmount(), 2);
+    }
+
+    @Test
+    public void addLike_shouldReturnNotFound_whenFilmOrUserDoesNotExist() {
+        restTemplate.postForLocation(url, film);
+        restTemplate.postForLocation(url.resolve("/users"), user);
+
+        ResponseEntity<ResponseError> addLikeNoFilm = restTemplate.exchange(url.resolve("/films/2/like/1"),
+                HttpMethod.PUT, new HttpEntity<>(null), ResponseError.class);
+        ResponseEntity<ResponseError> addLikeNoUser = restTemplate.exchange(url.resolve("/films/1/like/2"),
+                HttpMethod.PUT, new HttpEntity<>(null), ResponseError.class);
+        ResponseEntity<ResponseDefault> addLike = restTemplate.exchange(url.resolve("/films/1/like/1"),
+                HttpMethod.PUT, new HttpEntity<>(null), ResponseDefault.class);
+
+        assertSame(addLikeNoFilm.getStatusCode(), HttpStatus.NOT_FOUND);
+        assertEquals(addLikeNoFilm.getBody().getMessage(), "Фильм с ID: 2 не существует");
+        assertSame(addLikeNoUser.getStatusCode(), HttpStatus.NOT_FOUND);
+        assertEquals(addLikeNoUser.getBody().getMessage(), "Пользователь с ID: 2 не существует");
+        assertSame(addLike.getStatusCode(), HttpStatus.OK);
+    }
+
     @Test
     public void removeLike_shouldReturnOk_whenLikeExists() {
         restTemplate.postForLocation(url, film);
@@ -364,7 +621,7 @@ public class FilmControllerTests {
                 HttpMethod.DELETE, new HttpEntity<>(null), ResponseDefault.class);
 
         assertSame(removeLike.getStatusCode(), HttpStatus.OK);
-        assertEquals(removeLike.getBody().getMessage(), "Пользователь с ID: 1 удалил like фильму FilmName с ID: 1");
+        assertEquals(removeLike.getBody().getMessage(), "Пользователь с ID: 1 удалил like фильму с ID: 1");
     }
 
     @Test
@@ -415,6 +672,164 @@ public class FilmControllerTests {
         assertEquals(popularList, checkingList);
     }
 
+    @Test
+    public void getPopular_shouldReorderFilmsAndLimitCount_whenLikesAddedAndRemoved() {
+        restTemplate.postForLocation(url, film);
+        restTemplate.postForLocation(url, film1);
+        restTemplate.postForLocation(url, film2);
+        restTemplate.postForLocation(url.resolve("/users"), user);
+        restTemplate.postForLocation(url.resolve("/users"), user1);
+        restTemplate.put(url.resolve("/films/2/like/1"), null);
+        restTemplate.put(url.resolve("/films/2/like/2"), null);
+        restTemplate.put(url.resolve("/films/3/like/1"), null);
+        restTemplate.delete(url.resolve("/films/2/like/1"));
+        restTemplate.delete(url.resolve("/films/2/like/2"));
+
+        ResponseEntity<Film[]> getPopular = restTemplate.getForEntity(url.resolve("/films/popular?count=2"),
+                Film[].class);
+        List<Film> popularList = Arrays.asList(getPopular.getBody());
+
+        assertSame(getPopular.getStatusCode(), HttpStatus.OK);
+        assertEquals(popularList.size(), 2);
+        assertEquals(popularList.get(0).getId(), 3);
+        assertEquals(popularList.get(1).getId(), 1);
+    }
+
+    @Test
+    public void getSimilar_shouldRankFilmsByCoLikes_whenLikesAddedAndRemoved() {
+        restTemplate.postForLocation(url, film);
+        restTemplate.postForLocation(url, film1);
+        restTemplate.postForLocation(url, film2);
+        restTemplate.postForLocation(url, film3);
+        restTemplate.postForLocation(url.resolve("/users"), user);
+        restTemplate.postForLocation(url.resolve("/users"), user1);
+        restTemplate.postForLocation(url.resolve("/users"), user2);
+        restTemplate.put(url.resolve("/films/1/like/1"), null);
+        restTemplate.put(url.resolve("/films/1/like/2"), null);
+        restTemplate.put(url.resolve("/films/2/like/1"), null);
+        restTemplate.put(url.resolve("/films/2/like/2"), null);
+        restTemplate.put(url.resolve("/films/3/like/1"), null);
+        restTemplate.put(url.resolve("/films/3/like/3"), null);
+        restTemplate.put(url.resolve("/films/4/like/3"), null);
+        likesMatrix.refreshSimilar();
+
+        ResponseEntity<Film[]> similarResponse = restTemplate.getForEntity(url.resolve("/films/1/similar"),
+                Film[].class);
+        restTemplate.delete(url.resolve("/films/2/like/1"));
+        restTemplate.delete(url.resolve("/films/2/like/2"));
+        likesMatrix.refreshSimilar();
+        Film[] similarAfterRemove = restTemplate.getForObject(url.resolve("/films/1/similar?limit=5"), Film[].class);
+        ResponseEntity<ResponseError> notFoundResponse =
+                restTemplate.getForEntity(url.resolve("/films/9/similar"), ResponseError.class);
+
+        assertSame(similarResponse.getStatusCode(), HttpStatus.OK);
+        assertEquals(similarResponse.getBody().length, 2);
+        assertEquals(similarResponse.getBody()[0].getId(), 2);
+        assertEquals(similarResponse.getBody()[1].getId(), 3);
+        assertEquals(similarAfterRemove.length, 1);
+        assertEquals(similarAfterRemove[0].getId(), 3);
+        assertSame(notFoundResponse.getStatusCode(), HttpStatus.NOT_FOUND);
+        assertEquals(notFoundResponse.getBody().getMessage(), "Фильм с ID: 9 не существует");
+    }
+
+    @Test
+    public void getRecommendations_shouldSuggestFilmsOfSimilarUsers_whenUserLikesChange() {
+        restTemplate.postForLocation(url, film);
+        restTemplate.postForLocation(url, film1);
+        restTemplate.postForLocation(url, film2);
+        restTemplate.postForLocation(url, film3);
+        restTemplate.postForLocation(url.resolve("/users"), user);
+        restTemplate.postForLocation(url.resolve("/users"), user1);
+        restTemplate.postForLocation(url.resolve("/users"), user2);
+        restTemplate.put(url.resolve("/films/1/like/1"), null);
+        restTemplate.put(url.resolve("/films/2/like/1"), null);
+        restTemplate.put(url.resolve("/films/1/like/2"), null);
+        restTemplate.put(url.resolve("/films/2/like/2"), null);
+        restTemplate.put(url.resolve("/films/3/like/2"), null);
+        restTemplate.put(url.resolve("/films/1/like/3"), null);
+        restTemplate.put(url.resolve("/films/4/like/3"), null);
+
+        ResponseEntity<Film[]> recommendationsResponse =
+                restTemplate.getForEntity(url.resolve("/users/1/recommendations"), Film[].class);
+        restTemplate.put(url.resolve("/films/3/like/1"), null);
+        Film[] recommendationsAfterLike = restTemplate.getForObject(url.resolve("/users/1/recommendations"),
+                Film[].class);
+        ResponseEntity<ResponseError> notFoundResponse =
+                restTemplate.getForEntity(url.resolve("/users/9/recommendations"), ResponseError.class);
+
+        assertSame(recommendationsResponse.getStatusCode(), HttpStatus.OK);
+        assertEquals(recommendationsResponse.getBody().length, 2);
+        assertEquals(recommendationsResponse.getBody()[0].getId(), 3);
+        assertEquals(recommendationsResponse.getBody()[1].getId(), 4);
+        assertEquals(recommendationsAfterLike.length, 1);
+        assertEquals(recommendationsAfterLike[0].getId(), 4);
+        assertSame(notFoundResponse.getStatusCode(), HttpStatus.NOT_FOUND);
+        assertEquals(notFoundResponse.getBody().getMessage(), "Пользователь с ID: 9 не существует");
+    }
+
+    @Test
+    public void getPopular_shouldFollowLikesTable_whenCountersReconciled() {
+        restTemplate.postForLocation(url, film);
+        restTemplate.postForLocation(url, film1);
+        restTemplate.postForLocation(url.resolve("/users"), user);
+        restTemplate.postForLocation(url.resolve("/users"), user1);
+        restTemplate.put(url.resolve("/films/1/like/1"), null);
+        restTemplate.put(url.resolve("/films/2/like/1"), null);
+        jdbcTemplate.update("INSERT INTO likes (film_id, user_id, last_update) VALUES (2, 2, CURRENT_TIMESTAMP)");
+
+        Film[] popularBefore = restTemplate.getForObject(url.resolve("/films/popular?count=2"), Film[].class);
+        filmStorage.reconcileLikesCount();
+        Film[] popularAfter = restTemplate.getForObject(url.resolve("/films/popular?count=2"), Film[].class);
+
+        assertEquals(popularBefore[0].getId(), 1);
+        assertEquals(popularAfter[0].getId(), 2);
+        assertEquals(popularAfter[0].getLikesAmount(), 2);
+        assertEquals(jdbcTemplate.queryForObject("SELECT likes_count FROM films WHERE film_id = 2", Integer.class), 2);
+    }
+
+    @Test
+    public void addLike_shouldLeaveLikesCountToReconcile_whenLikedAndUserDeleted() {
+        restTemplate.postForLocation(url, film);
+        restTemplate.postForLocation(url.resolve("/users"), user);
+        restTemplate.postForLocation(url.resolve("/users"), user1);
+        restTemplate.put(url.resolve("/films/1/like/1"), null);
+        restTemplate.put(url.resolve("/films/1/like/2"), null);
+
+        Integer likesCountBeforeReconcile = jdbcTemplate.queryForObject(
+                "SELECT likes_count FROM films WHERE film_id = 1", Integer.class);
+        filmStorage.reconcileLikesCount();
+        Integer likesCountAfterLikes = jdbcTemplate.queryForObject("SELECT likes_count FROM films WHERE film_id = 1",
+                Integer.class);
+        restTemplate.delete(url.resolve("/users/2"));
+        Film filmAfterDelete = restTemplate.getForObject(url.resolve("/films/1"), Film.class);
+        filmStorage.reconcileLikesCount();
+
+        assertEquals(likesCountBeforeReconcile, 0);
+        assertEquals(likesCountAfterLikes, 2);
+        assertEquals(jdbcTemplate.queryForObject("SELECT likes_count FROM films WHERE film_id = 1", Integer.class), 1);
+        assertEquals(filmAfterDelete.getLikesAmount(), 1);
+    }
+
+    @Test
+    public void loadLeaderboard_shouldCountLikesTable_whenLikesCountBehind() {
+        restTemplate.postForLocation(url, film);
+        restTemplate.postForLocation(url, film1);
+        restTemplate.postForLocation(url.resolve("/users"), user);
+        restTemplate.postForLocation(url.resolve("/users"), user1);
+        restTemplate.put(url.resolve("/films/1/like/1"), null);
+        restTemplate.put(url.resolve("/films/2/like/1"), null);
+        restTemplate.put(url.resolve("/films/2/like/2"), null);
+
+        filmStorage.loadLeaderboard();
+        Film[] popular = restTemplate.getForObject(url.resolve("/films/popular?count=2"), Film[].class);
+        filmStorage.reconcileLikesCount();
+
+        assertEquals(popular[0].getId(), 2);
+        assertEquals(popular[0].getLikesAmount(), 2);
+        assertEquals(popular[1].getLikesAmount(), 1);
+        assertEquals(jdbcTemplate.queryForObject("SELECT likes_count FROM films WHERE film_id = 2", Integer.class), 2);
+    }
+
     @Test
     public void getFilm_shouldReturnFilmWithMpa1AsG_whenFilmWithIdExistsWithMpa1() {
         restTemplate.postForLocation(url, film);
@@ -465,4 +880,25 @@ public class FilmControllerTests {
         assertEquals(filmsList.get(0), film2);
         assertEquals(putFilm2Response.getBody().getGenres(), checkGenreSet);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void updateGenre_shouldKeepOnlyRequestedGenres_whenGenresPartiallyChanged() {
+        film1.setGenres(Set.of(genre1, genre2));
+        restTemplate.postForLocation(url, film1);
+        film1.setId(1);
+        film1.setGenres(Set.of(genre2, genre3));
+
+        ResponseEntity<Film> putFilm1Response = restTemplate.exchange(url, HttpMethod.PUT,
+                new HttpEntity<>(film1), Film.class);
+        ResponseEntity<Film> getFilmById1response = restTemplate.getForEntity(url.resolve("/films/1"), Film.class);
+
+        assertSame(putFilm1Response.getStatusCode(), HttpStatus.OK);
+        assertEquals(putFilm1Response.getBody().getGenres(), Set.of(genre2, genre3));
+        assertEquals(getFilmById1response.getBody().getGenres(), Set.of(genre2, genre3));
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Number> getFilmCacheStats() {
+        return (Map<String, Number>) restTemplate.getForObject(url.resolve("/metrics/caches"), Map.class).get("films");
+    }
+}
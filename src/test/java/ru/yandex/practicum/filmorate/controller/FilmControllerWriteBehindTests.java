@@ -0,0 +1,238 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import ru.yandex.practicum.filmorate.dao.impl.FilmDbStorage;
+import ru.yandex.practicum.filmorate.dao.impl.LikeWriteBuffer;
+import ru.yandex.practicum.filmorate.exception.ResponseError;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.ResponseDefault;
+
+import java.net.URI;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.springframework.test.annotation.DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD;
+
+//интервал сброса больше времени теста, поэтому лайки остаются в буфере, пока тест не вызовет flush()
+@AutoConfigureTestDatabase
+@DirtiesContext(classMode = AFTER_EACH_TEST_METHOD)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "filmorate.likes.write-behind.enabled=true",
+        "filmorate.likes.write-behind.flush-interval-ms=600000",
+        "filmorate.likes.write-behind.capacity=2"})
+public class FilmControllerWriteBehindTests {
+    private URI url;
+    private Film film;
+    private Film film1;
+    private User user;
+    private User user1;
+
+    @Value(value = "${local.server.port}")
+    private int port;
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private LikeWriteBuffer likeBuffer;
+
+    @Autowired
+    private FilmDbStorage filmStorage;
+
+    @BeforeEach
+    public void beforeEach() {
+        url = URI.create("http://localhost:" + port + "/films");
+
+        Mpa mpa = Mpa.builder()
+                .id(1)
+                .name("G")
+                .build();
+
+        film = Film.builder()
+                .name("FilmName")
+                .description("Any film description")
+                .releaseDate(LocalDate.of(1990, 10, 12))
+                .duration(95)
+                .mpa(mpa)
+                .genres(new HashSet<>())
+                .likes(new TreeSet<>())
+                .build();
+
+        film1 = Film.builder()
+                .name("Film1Name")
+                .description("Any film1 description")
+                .releaseDate(LocalDate.of(1981, 12, 1))
+                .duration(120)
+                .mpa(mpa)
+                .genres(new HashSet<>())
+                .likes(new TreeSet<>())
+                .build();
+
+        user = User.builder()
+                .email("mail@yandex.ru")
+                .login("userLogin")
+                .name("UserName")
+                .birthday(LocalDate.of(2005, 1, 22))
+                .build();
+
+        user1 = User.builder()
+                .email("mail1@yandex.ru")
+                .login("user1Login")
+                .name("User1Name")
+                .birthday(LocalDate.of(1995, 7, 2))
+                .build();
+    }
+
+    @Test
+    public void addLike_shouldBeVisibleBeforeFlush_whenWriteBehindEnabled() {
+        restTemplate.postForLocation(url, film);
+        restTemplate.postForLocation(url.resolve("/users"), user);
+
+        ResponseEntity<ResponseDefault> addLike = restTemplate.exchange(url.resolve("/films/1/like/1"),
+                HttpMethod.PUT, new HttpEntity<>(null), ResponseDefault.class);
+        ResponseEntity<ResponseError> addLikeAgain = restTemplate.exchange(url.resolve("/films/1/like/1"),
+                HttpMethod.PUT, new HttpEntity<>(null), ResponseError.class);
+        Film filmResponse = restTemplate.getForObject(url.resolve("/films/1"), Film.class);
+
+        assertSame(addLike.getStatusCode(), HttpStatus.OK);
+        assertEquals(addLike.getBody().getMessage(), "Пользователь с ID: 1 поставил like фильму с ID: 1");
+        assertSame(addLikeAgain.getStatusCode(), HttpStatus.INTERNAL_SERVER_ERROR);
+        assertEquals(addLikeAgain.getBody().getMessage(),
+                "Пользователь с ID: 1 уже поставил like фильму FilmName с ID: 1");
+        assertEquals(filmResponse.getLikes(), Set.of(1));
+        assertEquals(countLikes(), 0);
+
+        likeBuffer.flush();
+
+        assertEquals(countLikes(), 1);
+
+        filmStorage.reconcileLikesCount();
+
+        assertEquals(jdbcTemplate.queryForObject("SELECT likes_count FROM films WHERE film_id = 1", Integer.class), 1);
+    }
+
+    @Test
+    public void removeLike_shouldCollapseWithPendingLike_whenWriteBehindEnabled() {
+        restTemplate.postForLocation(url, film);
+        restTemplate.postForLocation(url.resolve("/users"), user);
+        restTemplate.put(url.resolve("/films/1/like/1"), null);
+
+        ResponseEntity<ResponseDefault> removeLike = restTemplate.exchange(url.resolve("/films/1/like/1"),
+                HttpMethod.DELETE, new HttpEntity<>(null), ResponseDefault.class);
+        ResponseEntity<ResponseError> removeLikeAgain = restTemplate.exchange(url.resolve("/films/1/like/1"),
+                HttpMethod.DELETE, new HttpEntity<>(null), ResponseError.class);
+        Film filmResponse = restTemplate.getForObject(url.resolve("/films/1"), Film.class);
+        likeBuffer.flush();
+        filmStorage.reconcileLikesCount();
+
+        assertSame(removeLike.getStatusCode(), HttpStatus.OK);
+        assertSame(removeLikeAgain.getStatusCode(), HttpStatus.NOT_FOUND);
+        assertEquals(filmResponse.getLikes(), Set.of());
+        assertEquals(countLikes(), 0);
+        assertEquals(jdbcTemplate.queryForObject("SELECT likes_count FROM films WHERE film_id = 1", Integer.class), 0);
+    }
+
+    @Test
+    public void removeLike_shouldLeaveLikesCountToFlush_whenWriteBehindEnabled() {
+        restTemplate.postForLocation(url, film);
+        restTemplate.postForLocation(url.resolve("/users"), user);
+        restTemplate.put(url.resolve("/films/1/like/1"), null);
+        likeBuffer.flush();
+
+        restTemplate.delete(url.resolve("/films/1/like/1"));
+        Integer likesCountBeforeFlush = jdbcTemplate.queryForObject("SELECT likes_count FROM films WHERE film_id = 1",
+                Integer.class);
+        likeBuffer.flush();
+
+        assertEquals(likesCountBeforeFlush, 1);
+        assertEquals(countLikes(), 0);
+        assertEquals(jdbcTemplate.queryForObject("SELECT likes_count FROM films WHERE film_id = 1", Integer.class), 0);
+    }
+
+    @Test
+    public void pendingDelta_shouldCountOnlyUnwrittenChanges_whenWriteBehindEnabled() {
+        restTemplate.postForLocation(url, film);
+        restTemplate.postForLocation(url.resolve("/users"), user);
+        restTemplate.postForLocation(url.resolve("/users"), user1);
+        restTemplate.put(url.resolve("/films/1/like/1"), null);
+        likeBuffer.flush();
+
+        restTemplate.put(url.resolve("/films/1/like/2"), null);
+        int deltaAfterLike = likeBuffer.pendingDelta(1);
+        restTemplate.delete(url.resolve("/films/1/like/1"));
+        int deltaAfterRemove = likeBuffer.pendingDelta(1);
+        likeBuffer.flush();
+
+        assertEquals(deltaAfterLike, 1);
+        assertEquals(deltaAfterRemove, 0);
+        assertEquals(likeBuffer.pendingDelta(1), 0);
+        assertEquals(countLikes(), 1);
+    }
+
+    @Test
+    public void addLike_shouldWaitForWriterThread_whenQueueIsFull() {
+        restTemplate.postForLocation(url, film);
+        restTemplate.postForLocation(url, film1);
+        restTemplate.postForLocation(url.resolve("/users"), user);
+        restTemplate.postForLocation(url.resolve("/users"), user1);
+        restTemplate.put(url.resolve("/films/1/like/1"), null);
+        restTemplate.put(url.resolve("/films/1/like/2"), null);
+        restTemplate.put(url.resolve("/films/2/like/1"), null);
+
+        ResponseEntity<Film[]> getPopular = restTemplate.getForEntity(url.resolve("/films/popular?count=2"),
+                Film[].class);
+        List<Film> popularList = Arrays.asList(getPopular.getBody());
+        likeBuffer.flush();
+
+        assertEquals(countLikes(), 3);
+        assertEquals(popularList.get(0).getId(), 1);
+        assertEquals(popularList.get(0).getLikes(), Set.of(1, 2));
+        assertEquals(popularList.get(1).getLikes(), Set.of(1));
+    }
+
+    @Test
+    public void addLike_shouldKeepPendingUntilWrittenAndDropAfterRetries_whenWriteFails() {
+        restTemplate.postForLocation(url, film);
+        restTemplate.postForLocation(url.resolve("/users"), user);
+        restTemplate.put(url.resolve("/films/1/like/1"), null);
+        jdbcTemplate.update("DELETE FROM users WHERE user_id = 1");
+
+        likeBuffer.flush();
+        Film filmAfterFailedFlush = restTemplate.getForObject(url.resolve("/films/1"), Film.class);
+        likeBuffer.flush();
+        likeBuffer.flush();
+        Film filmAfterRetries = restTemplate.getForObject(url.resolve("/films/1"), Film.class);
+
+        assertEquals(filmAfterFailedFlush.getLikes(), Set.of(1));
+        assertEquals(filmAfterRetries.getLikes(), Set.of());
+        assertEquals(filmAfterRetries.getLikesAmount(), 0);
+        assertEquals(countLikes(), 0);
+    }
+
+    private Integer countLikes() {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM likes", Integer.class);
+    }
+}
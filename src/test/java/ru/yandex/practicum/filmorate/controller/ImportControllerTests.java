@@ -0,0 +1,134 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.annotation.DirtiesContext;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.springframework.test.annotation.DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD;
+
+//части по 2 строки, чтобы в каждом импорте было несколько частей в обработке одновременно
+@AutoConfigureTestDatabase
+@DirtiesContext(classMode = AFTER_EACH_TEST_METHOD)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "filmorate.import.chunk-size=2",
+        "filmorate.import.threads=2"})
+public class ImportControllerTests {
+    private static final String USERS_CSV = "email,login,name,birthday\n" +
+            "mail@yandex.ru,userLogin,UserName,2005-01-22\n" +
+            "mailUser1@yandex.ru,user1Login,,1990-10-12\n" +
+            "mailUser2@yandex.ru,user2Login,\"Name, With Comma\",1984-11-10\n" +
+            "mailUser3,user3Login,User3Name,1986-05-12\n" +
+            "mailUser4@yandex.ru,userLogin,User4Name,1998-01-05\n";
+    private static final String FILMS_NDJSON =
+            "{\"name\":\"FilmName\",\"description\":\"d\",\"releaseDate\":\"1990-10-12\",\"duration\":95," +
+                    "\"mpa\":{\"id\":1},\"genres\":[{\"id\":1},{\"id\":2}]}\n" +
+            "{\"name\":\"Film1Name\",\"description\":\"d1\",\"releaseDate\":\"1981-12-01\",\"duration\":120," +
+                    "\"mpa\":{\"id\":1}}\n" +
+            "{\"name\":\"Film2Name\",\"description\":\"d2\",\"releaseDate\":\"1979-06-15\",\"duration\":-1," +
+                    "\"mpa\":{\"id\":1}}\n" +
+            "not a json\n";
+    private static final String LIKES_CSV = "filmId,userId\n2,1\n2,2\n1,1\n2,3\n9,1\n2,1\n";
+    private static final String FRIENDS_NDJSON = "{\"userId\":1,\"friendId\":2}\n{\"userId\":2,\"friendId\":1}\n" +
+            "{\"userId\":1,\"friendId\":3}\n{\"userId\":1,\"friendId\":1}\n{\"userId\":1,\"friendId\":9}\n";
+
+    private URI url;
+
+    @Value(value = "${local.server.port}")
+    private int port;
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @BeforeEach
+    public void beforeEach() {
+        url = URI.create("http://localhost:" + port + "/import");
+    }
+
+    @Test
+    public void importData_shouldWriteValidRowsAndReloadLikesAndFriends_whenCsvAndNdjsonImported() {
+        ResponseEntity<Map> usersResponse = post("/import/users", USERS_CSV, "text/csv");
+        ResponseEntity<Map> filmsResponse = post("/import/films", FILMS_NDJSON, "application/x-ndjson");
+        ResponseEntity<Map> likesResponse = post("/import/likes", LIKES_CSV, "text/csv");
+        ResponseEntity<Map> friendsResponse = post("/import/friends", FRIENDS_NDJSON, "application/x-ndjson");
+
+        assertSame(usersResponse.getStatusCode(), HttpStatus.OK);
+        assertEquals(usersResponse.getBody().get("rowsRead"), 5);
+        assertEquals(usersResponse.getBody().get("rowsImported"), 3);
+        assertEquals(usersResponse.getBody().get("rowsRejected"), 2);
+        assertEquals(((List<?>) usersResponse.getBody().get("errors")).size(), 2);
+        assertEquals(filmsResponse.getBody().get("rowsImported"), 2);
+        assertEquals(filmsResponse.getBody().get("errors"), List.of(
+                "Строка 3: Продолжительность фильма не может быть отрицательной",
+                "Строка 4: неверный формат данных"));
+        assertEquals(likesResponse.getBody().get("rowsImported"), 4);
+        assertEquals(likesResponse.getBody().get("rowsRejected"), 2);
+        assertEquals(friendsResponse.getBody().get("rowsImported"), 3);
+
+        User user2 = restTemplate.getForObject(url.resolve("/users/2"), User.class);
+        User user3 = restTemplate.getForObject(url.resolve("/users/3"), User.class);
+        Film[] popular = restTemplate.getForObject(url.resolve("/films/popular?count=2"), Film[].class);
+        User[] friends = restTemplate.getForObject(url.resolve("/users/1/friends"), User[].class);
+
+        assertEquals(user2.getName(), "user1Login");
+        assertEquals(user3.getName(), "Name, With Comma");
+        assertEquals(popular[0].getId(), 2);
+        assertEquals(popular[0].getLikesAmount(), 3);
+        assertEquals(popular[0].getLikes().size(), 3);
+        assertEquals(popular[1].getId(), 1);
+        assertEquals(popular[1].getLikesAmount(), 1);
+        assertEquals(popular[1].getGenres().size(), 2);
+        assertEquals(friends.length, 2);
+        assertEquals(restTemplate.getForObject(url.resolve("/users/2/friends"), User[].class).length, 1);
+    }
+
+    @Test
+    public void importData_shouldSkipCommittedRows_whenJobResumed() {
+        post("/import/users", USERS_CSV, "text/csv");
+        post("/import/films", FILMS_NDJSON, "application/x-ndjson");
+
+        ResponseEntity<Map> firstResponse = post("/import/likes?jobId=likes-1", "filmId,userId\n2,1\n2,2\n",
+                "text/csv");
+        ResponseEntity<Map> resumedResponse = post("/import/likes?jobId=likes-1", LIKES_CSV, "text/csv");
+        ResponseEntity<Map> otherEntityResponse = post("/import/friends?jobId=likes-1", FRIENDS_NDJSON,
+                "application/x-ndjson");
+
+        assertEquals(firstResponse.getBody().get("rowsImported"), 2);
+        assertEquals(resumedResponse.getBody().get("rowsSkipped"), 2);
+        assertEquals(resumedResponse.getBody().get("rowsRead"), 4);
+        assertEquals(resumedResponse.getBody().get("rowsImported"), 2);
+        assertSame(otherEntityResponse.getStatusCode(), HttpStatus.BAD_REQUEST);
+        assertEquals(restTemplate.getForObject(url.resolve("/films/2"), Film.class).getLikesAmount(), 3);
+    }
+
+    @Test
+    public void importData_shouldReturnBadRequest_whenEntityUnknown() {
+        ResponseEntity<Map> response = post("/import/genres", "id\n1\n", "text/csv");
+
+        assertSame(response.getStatusCode(), HttpStatus.BAD_REQUEST);
+        assertEquals(response.getBody().get("message"), "Неизвестный тип данных для импорта: genres");
+    }
+
+    private ResponseEntity<Map> post(String path, String body, String contentType) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.valueOf(contentType + ";charset=UTF-8"));
+        return restTemplate.postForEntity(url.resolve(path), new HttpEntity<>(body, headers), Map.class);
+    }
+}
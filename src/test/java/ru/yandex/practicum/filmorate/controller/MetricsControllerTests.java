@@ -0,0 +1,153 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.annotation.DirtiesContext;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.FilmService;
+
+import java.net.URI;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.springframework.test.annotation.DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD;
+
+//порог медленных запросов 0, чтобы каждый запрос проходил через журнал медленных запросов с планом
+@AutoConfigureTestDatabase
+@DirtiesContext(classMode = AFTER_EACH_TEST_METHOD)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "filmorate.jdbc.slow-query-ms=0",
+        "filmorate.users.cache-size=1"})
+public class MetricsControllerTests {
+    private URI url;
+
+    @Value(value = "${local.server.port}")
+    private int port;
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @SpyBean
+    private FilmService filmService;
+
+    @BeforeEach
+    public void beforeEach() {
+        url = URI.create("http://localhost:" + port + "/metrics");
+    }
+
+    @Test
+    public void getQueryStats_shouldCountCallsAndRowsBySql_whenStoragesQueried() {
+        restTemplate.postForLocation(url.resolve("/users"), User.builder()
+                .email("mail@yandex.ru")
+                .login("userLogin")
+                .name("UserName")
+                .birthday(LocalDate.of(2005, 1, 22))
+                .build());
+        restTemplate.postForLocation(url.resolve("/users"), User.builder()
+                .email("mailUser1@yandex.ru")
+                .login("user1Login")
+                .name("User1Name")
+                .birthday(LocalDate.of(1990, 10, 12))
+                .build());
+        restTemplate.getForObject(url.resolve("/users/1"), User.class);
+        restTemplate.getForObject(url.resolve("/users/2"), User.class);
+        restTemplate.getForObject(url.resolve("/users/1"), User.class);
+
+        ResponseEntity<List> queriesResponse = restTemplate.getForEntity(url.resolve("/metrics/queries"), List.class);
+        Map<String, Map<String, Object>> queries = ((List<Map<String, Object>>) queriesResponse.getBody()).stream()
+                .collect(Collectors.toMap(query -> (String) query.get("sql"), query -> query));
+        Map<String, Object> findUser = queries.get("SELECT u.user_id, u.email, u.login, u.user_name, u.birthday " +
+                "FROM users AS u WHERE u.user_id = ?");
+        Map<String, Object> putUser = queries.get("INSERT INTO users(email, login, user_name, birthday) " +
+                "VALUES (?, ...)");
+
+        assertSame(queriesResponse.getStatusCode(), HttpStatus.OK);
+        assertEquals(((String) findUser.get("name")).split(":")[0], "SELECT users");
+        assertEquals(findUser.get("calls"), 5);
+        assertEquals(findUser.get("rows"), 5);
+        assertEquals(findUser.get("errors"), 0);
+        assertEquals(((Map<String, Number>) findUser.get("histogramMs")).values().stream()
+                .mapToLong(Number::longValue).sum(), 5L);
+        assertEquals(((String) putUser.get("name")).split(":")[0], "INSERT users");
+        assertEquals(putUser.get("rows"), 2);
+    }
+
+    @Test
+    public void getEndpointStats_shouldGroupRequestsByMappingAndStatus_whenFilmsAndUsersRequested() {
+        restTemplate.postForLocation(url.resolve("/users"), User.builder()
+                .email("mail@yandex.ru")
+                .login("userLogin")
+                .name("UserName")
+                .birthday(LocalDate.of(2005, 1, 22))
+                .build());
+        restTemplate.getForEntity(url.resolve("/users/1"), User.class);
+        restTemplate.getForEntity(url.resolve("/users/1"), User.class);
+        restTemplate.getForEntity(url.resolve("/users/9"), String.class);
+        restTemplate.getForEntity(url.resolve("/users/abc"), String.class);
+        restTemplate.getForEntity(url.resolve("/genres"), String.class);
+        restTemplate.getForEntity(url.resolve("/metrics/caches"), String.class);
+
+        ResponseEntity<List> endpointsResponse = restTemplate.getForEntity(url.resolve("/metrics/endpoints"),
+                List.class);
+        Map<Object, Map<String, Object>> endpoints = ((List<Map<String, Object>>) endpointsResponse.getBody())
+                .stream()
+                .collect(Collectors.toMap(endpoint -> endpoint.get("endpoint"), endpoint -> endpoint));
+        Map<String, Object> getUser = endpoints.get("GET /users/{id}");
+        Map<String, Map<String, Object>> statuses = (Map<String, Map<String, Object>>) getUser.get("statuses");
+
+        assertSame(endpointsResponse.getStatusCode(), HttpStatus.OK);
+        assertEquals(endpoints.keySet(), Set.of("POST /users", "GET /users/{id}", "GET /genres"));
+        assertEquals(getUser.get("requests"), 4);
+        assertEquals(getUser.get("errors"), 2);
+        assertEquals(getUser.get("errorRate"), 0.5);
+        assertEquals(statuses.keySet(), Set.of("200", "400", "404"));
+        assertEquals(statuses.get("200").get("requests"), 2);
+        assertEquals(statuses.get("404").get("requests"), 1);
+        assertEquals(((Number) getUser.get("requestsPerSecond")).doubleValue(), 4 / 60.0, 1e-9);
+        assertEquals(((Number) getUser.get("p999Ms")).doubleValue(), ((Number) getUser.get("maxMs")).doubleValue());
+    }
+
+    @Test
+    public void getEndpointStats_shouldMeasureUntilBodyWritten_whenResponseStreamed() {
+        doAnswer(invocation -> {
+            Thread.sleep(300);
+            return invocation.callRealMethod();
+        }).when(filmService).streamFilms(any());
+        HttpHeaders ndjsonHeaders = new HttpHeaders();
+        ndjsonHeaders.setAccept(List.of(MediaType.valueOf("application/x-ndjson")));
+
+        ResponseEntity<String> streamResponse = restTemplate.exchange(url.resolve("/films"), HttpMethod.GET,
+                new HttpEntity<>(ndjsonHeaders), String.class);
+        ResponseEntity<List> endpointsResponse = restTemplate.getForEntity(url.resolve("/metrics/endpoints"),
+                List.class);
+        Map<String, Object> getFilms = ((List<Map<String, Object>>) endpointsResponse.getBody()).stream()
+                .filter(endpoint -> endpoint.get("endpoint").equals("GET /films"))
+                .findFirst()
+                .orElseThrow();
+
+        assertSame(streamResponse.getStatusCode(), HttpStatus.OK);
+        assertEquals(getFilms.get("requests"), 1);
+        assertEquals(((Map<String, Object>) getFilms.get("statuses")).keySet(), Set.of("200"));
+        assertThat(((Number) getFilms.get("maxMs")).doubleValue()).isGreaterThanOrEqualTo(300);
+    }
+}
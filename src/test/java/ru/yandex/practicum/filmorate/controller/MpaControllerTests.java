@@ -8,6 +8,9 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.test.annotation.DirtiesContext;
@@ -100,6 +103,20 @@ public class MpaControllerTests {
         assertEquals(getMpaById5response.getBody(), mpa5);
     }
 
+    @Test
+    public void getAllMpa_shouldReturnNotModified_whenETagMatches() {
+        ResponseEntity<Mpa[]> firstResponse = restTemplate.getForEntity(url, Mpa[].class);
+        HttpHeaders conditional = new HttpHeaders();
+        conditional.setIfNoneMatch(firstResponse.getHeaders().getETag());
+
+        ResponseEntity<Mpa[]> secondResponse = restTemplate.exchange(url, HttpMethod.GET,
+                new HttpEntity<>(conditional), Mpa[].class);
+
+        assertSame(firstResponse.getStatusCode(), HttpStatus.OK);
+        assertSame(secondResponse.getStatusCode(), HttpStatus.NOT_MODIFIED);
+        assertEquals(secondResponse.getHeaders().getETag(), firstResponse.getHeaders().getETag());
+    }
+
     @Test
     public void getMpa_shouldReturnNotFound_whenMpaWithDoesNotExistsId() {
         ResponseEntity<ResponseError> getMpaById9response = restTemplate.getForEntity(url.resolve("/mpa/9"),
@@ -9,9 +9,12 @@ import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabas
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.web.client.TestRestTemplate;
 import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.annotation.DirtiesContext;
 import ru.yandex.practicum.filmorate.exception.ResponseError;
 import ru.yandex.practicum.filmorate.model.User;
@@ -21,6 +24,8 @@ import java.net.URI;
 import java.time.LocalDate;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.TreeSet;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -46,6 +51,9 @@ public class UserControllerTests {
     @Autowired
     private TestRestTemplate restTemplate;
 
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
     @BeforeEach
     public void beforeEach() {
         url = URI.create("http://localhost:" + port + "/users");
@@ -117,6 +125,83 @@ public class UserControllerTests {
         assertEquals(usersList.get(1), user2);
     }
 
+    @Test
+    public void createUsers_shouldCreateValidUsersAndReportErrorsPerItem_whenBatchRequest() {
+        restTemplate.postForLocation(url, user);
+        user2.setLogin(user.getLogin());
+        user3.setEmail("mailUser3");
+        user4.setName(null);
+
+        ResponseEntity<Map[]> batchResponse = restTemplate.postForEntity(url.resolve("/users/batch"),
+                List.of(user1, user2, user3, user4), Map[].class);
+        ResponseEntity<User> getUser3Response = restTemplate.getForEntity(url.resolve("/users/3"), User.class);
+
+        assertSame(batchResponse.getStatusCode(), HttpStatus.OK);
+        assertEquals(batchResponse.getBody().length, 4);
+        assertEquals(batchResponse.getBody()[0].get("id"), 2);
+        assertEquals(batchResponse.getBody()[0].get("status"), "CREATED");
+        assertEquals(batchResponse.getBody()[1].get("status"), "CONFLICT");
+        assertEquals(batchResponse.getBody()[1].get("message"), "Пользователь с login: userLogin уже существует");
+        assertEquals(batchResponse.getBody()[2].get("status"), "BAD_REQUEST");
+        assertEquals(batchResponse.getBody()[3].get("id"), 3);
+        assertEquals(getUser3Response.getBody().getName(), user4.getLogin());
+        assertEquals(restTemplate.getForEntity(url, User[].class).getBody().length, 3);
+    }
+
+    @Test
+    public void createUsers_shouldNotReserveEmailOfRejectedItem_whenLoginRepeatedInBatch() {
+        user2.setLogin(user1.getLogin());
+        user3.setEmail(user2.getEmail());
+
+        ResponseEntity<Map[]> batchResponse = restTemplate.postForEntity(url.resolve("/users/batch"),
+                List.of(user1, user2, user3), Map[].class);
+
+        assertSame(batchResponse.getStatusCode(), HttpStatus.OK);
+        assertEquals(batchResponse.getBody()[0].get("id"), 1);
+        assertEquals(batchResponse.getBody()[1].get("status"), "CONFLICT");
+        assertEquals(batchResponse.getBody()[1].get("message"), "Пользователь с login: " + user1.getLogin()
+                + " повторяется в запросе");
+        assertEquals(batchResponse.getBody()[2].get("id"), 2);
+    }
+
+    @Test
+    public void getAllUsers_shouldReturnPageWithNextCursor_whenAfterAndLimitSet() {
+        restTemplate.postForLocation(url, user1);
+        restTemplate.postForLocation(url, user2);
+        restTemplate.postForLocation(url, user3);
+
+        ResponseEntity<User[]> firstPage = restTemplate.getForEntity(url.resolve("/users?after=1&limit=1"),
+                User[].class);
+        ResponseEntity<User[]> lastPage = restTemplate.getForEntity(url.resolve("/users?after=2&limit=5"),
+                User[].class);
+
+        assertSame(firstPage.getStatusCode(), HttpStatus.OK);
+        assertEquals(firstPage.getBody().length, 1);
+        assertEquals(firstPage.getBody()[0].getId(), 2);
+        assertEquals(firstPage.getHeaders().getFirst("X-Next-Cursor"), "2");
+        assertSame(lastPage.getStatusCode(), HttpStatus.OK);
+        assertEquals(lastPage.getBody().length, 1);
+        assertEquals(lastPage.getBody()[0].getId(), 3);
+        assertEquals(lastPage.getHeaders().getFirst("X-Next-Cursor"), null);
+    }
+
+    @Test
+    public void getAllUsers_shouldStreamNdjson_whenNdjsonAccepted() {
+        restTemplate.postForLocation(url, user1);
+        restTemplate.postForLocation(url, user2);
+        HttpHeaders headers = new HttpHeaders();
+        headers.setAccept(List.of(MediaType.valueOf("application/x-ndjson")));
+
+        ResponseEntity<String> streamResponse = restTemplate.exchange(url, HttpMethod.GET, new HttpEntity<>(headers),
+                String.class);
+        String[] lines = streamResponse.getBody().split("\n");
+
+        assertSame(streamResponse.getStatusCode(), HttpStatus.OK);
+        assertEquals(lines.length, 2);
+        assertThat(lines[0]).contains("\"id\":1").contains(user1.getEmail());
+        assertThat(lines[1]).contains("\"id\":2").contains(user2.getEmail());
+    }
+
     @Test
     public void createUser_shouldReturnBadRequest_whenUserEmailIsEmptyOrNull() {
         user1.setEmail("");
@@ -239,6 +324,55 @@ public class UserControllerTests {
         assertEquals(getUserById1response.getBody(), user);
     }
 
+    @Test
+    public void getUserById_shouldReturnNotModifiedUntilFriendsChange_whenIfNoneMatchSent() {
+        restTemplate.postForLocation(url, user1);
+        restTemplate.postForLocation(url, user2);
+        ResponseEntity<User> firstResponse = restTemplate.getForEntity(url.resolve("/users/1"), User.class);
+        HttpHeaders conditional = new HttpHeaders();
+        conditional.setIfNoneMatch(firstResponse.getHeaders().getETag());
+
+        ResponseEntity<User> unchangedResponse = restTemplate.exchange(url.resolve("/users/1"), HttpMethod.GET,
+                new HttpEntity<>(conditional), User.class);
+        restTemplate.exchange(url.resolve("/users/1/friends/2"), HttpMethod.PUT, new HttpEntity<>(null),
+                ResponseDefault.class);
+        ResponseEntity<User> changedResponse = restTemplate.exchange(url.resolve("/users/1"), HttpMethod.GET,
+                new HttpEntity<>(conditional), User.class);
+        ResponseEntity<User> otherUserResponse = restTemplate.exchange(url.resolve("/users/2"), HttpMethod.GET,
+                new HttpEntity<>(conditional), User.class);
+
+        assertSame(unchangedResponse.getStatusCode(), HttpStatus.NOT_MODIFIED);
+        assertSame(changedResponse.getStatusCode(), HttpStatus.OK);
+        assertEquals(changedResponse.getBody().getFriends(), Set.of(2));
+        assertSame(otherUserResponse.getStatusCode(), HttpStatus.OK);
+        assertEquals(unchangedResponse.getHeaders().get(HttpHeaders.ETAG), List.of(conditional.getIfNoneMatch().get(0)));
+    }
+
+    @Test
+    public void getUserById_shouldServeFromCacheAndForgetMissingUser_whenUserCreatedOrFriendsChange() {
+        ResponseEntity<ResponseError> missingResponse = restTemplate.getForEntity(url.resolve("/users/1"),
+                ResponseError.class);
+        restTemplate.postForLocation(url, user1);
+        restTemplate.postForLocation(url, user2);
+        ResponseEntity<User> createdResponse = restTemplate.getForEntity(url.resolve("/users/1"), User.class);
+        restTemplate.getForEntity(url.resolve("/users/1"), User.class);
+        Map<String, Number> statsAfterReads = getUserCacheStats();
+
+        restTemplate.put(url.resolve("/users/1/friends/2"), null);
+        User userWithFriend = restTemplate.getForObject(url.resolve("/users/1"), User.class);
+        restTemplate.exchange(url.resolve("/users/2"), HttpMethod.DELETE, HttpEntity.EMPTY, ResponseDefault.class);
+        User userWithoutFriend = restTemplate.getForObject(url.resolve("/users/1"), User.class);
+        ResponseEntity<ResponseError> deletedResponse = restTemplate.getForEntity(url.resolve("/users/2"),
+                ResponseError.class);
+
+        assertSame(missingResponse.getStatusCode(), HttpStatus.NOT_FOUND);
+        assertSame(createdResponse.getStatusCode(), HttpStatus.OK);
+        assertEquals(statsAfterReads.get("hits").longValue(), 2L);
+        assertEquals(userWithFriend.getFriends(), Set.of(2));
+        assertEquals(userWithoutFriend.getFriends(), Set.of());
+        assertSame(deletedResponse.getStatusCode(), HttpStatus.NOT_FOUND);
+    }
+
     @Test
     public void deleteUser_shouldReturnNotFound_whenUserWithIdDoesNotExist() {
         ResponseEntity<ResponseError> deleteUserById3response = restTemplate.exchange(url.resolve("/users/3"),
@@ -348,6 +482,62 @@ public class UserControllerTests {
         assertEquals(commonFriends.get(1), getUserById3response.getBody());
     }
 
+    @Test
+    public void getCommonFriends_shouldFollowFriendChanges_whenFriendRemovedOrDeleted() {
+        restTemplate.postForLocation(url, user1);
+        restTemplate.postForLocation(url, user2);
+        restTemplate.postForLocation(url, user3);
+        restTemplate.postForLocation(url, user4);
+        restTemplate.put(url.resolve("/users/1/friends/2"), null);
+        restTemplate.put(url.resolve("/users/1/friends/3"), null);
+        restTemplate.put(url.resolve("/users/4/friends/2"), null);
+        restTemplate.put(url.resolve("/users/4/friends/3"), null);
+        restTemplate.put(url.resolve("/users/2/friends/1"), null);
+        restTemplate.delete(url.resolve("/users/4/friends/2"));
+        restTemplate.delete(url.resolve("/users/3"));
+
+        User[] commonFriends = restTemplate.getForObject(url.resolve("/users/1/friends/common/4"), User[].class);
+        User[] user1Friends = restTemplate.getForObject(url.resolve("/users/1/friends"), User[].class);
+        User user1Response = restTemplate.getForObject(url.resolve("/users/1"), User.class);
+
+        assertEquals(commonFriends.length, 0);
+        assertEquals(user1Friends.length, 1);
+        assertEquals(user1Friends[0].getId(), 2);
+        assertEquals(user1Friends[0].getFriends(), Set.of(1));
+        assertEquals(user1Response.getFriends(), Set.of(2));
+    }
+
+    @Test
+    public void getSuggestions_shouldRankNonFriendsByMutualFriends_whenFriendsOfFriendsExist() {
+        restTemplate.postForLocation(url, user1);
+        restTemplate.postForLocation(url, user2);
+        restTemplate.postForLocation(url, user3);
+        restTemplate.postForLocation(url, user4);
+        restTemplate.postForLocation(url, user);
+        restTemplate.put(url.resolve("/users/1/friends/2"), null);
+        restTemplate.put(url.resolve("/users/1/friends/3"), null);
+        restTemplate.put(url.resolve("/users/2/friends/5"), null);
+        restTemplate.put(url.resolve("/users/2/friends/4"), null);
+        restTemplate.put(url.resolve("/users/3/friends/4"), null);
+        restTemplate.put(url.resolve("/users/3/friends/1"), null);
+
+        ResponseEntity<User[]> suggestionsResponse = restTemplate.getForEntity(url.resolve("/users/1/suggestions"),
+                User[].class);
+        User[] limitedSuggestions = restTemplate.getForObject(url.resolve("/users/1/suggestions?limit=1"),
+                User[].class);
+        ResponseEntity<ResponseError> badLimitResponse =
+                restTemplate.getForEntity(url.resolve("/users/1/suggestions?limit=0"), ResponseError.class);
+
+        assertSame(suggestionsResponse.getStatusCode(), HttpStatus.OK);
+        assertEquals(suggestionsResponse.getBody().length, 2);
+        assertEquals(suggestionsResponse.getBody()[0].getId(), 4);
+        assertEquals(suggestionsResponse.getBody()[1].getId(), 5);
+        assertEquals(limitedSuggestions.length, 1);
+        assertEquals(limitedSuggestions[0].getId(), 4);
+        assertSame(badLimitResponse.getStatusCode(), HttpStatus.BAD_REQUEST);
+        assertEquals(badLimitResponse.getBody().getMessage(), "Количество рекомендаций должно быть от 1 до 1000");
+    }
+
     @Test
     public void addFriend_shouldReturnOk_whenAddingFriends() {
         restTemplate.postForLocation(url, user1);
@@ -377,6 +567,21 @@ public class UserControllerTests {
         assertEquals(putUser1Friend2Response.getBody().getMessage(), "Пользователи с ID: 1 и ID: 2 уже друзья");
     }
 
+    @Test
+    public void addFriend_shouldReturnInternalServerError_whenSameRequestCommittedConcurrently() {
+        restTemplate.postForLocation(url, user1);
+        restTemplate.postForLocation(url, user2);
+        jdbcTemplate.update("INSERT INTO friends (user_id, friend_id, status_id, last_update) " +
+                "VALUES (1, 2, 1, CURRENT_TIMESTAMP)");
+
+        ResponseEntity<ResponseError> putUser1Friend2Response =
+                restTemplate.exchange(url.resolve("/users/1/friends/2"), HttpMethod.PUT, new HttpEntity<>(null),
+                        ResponseError.class);
+
+        assertSame(putUser1Friend2Response.getStatusCode(), HttpStatus.INTERNAL_SERVER_ERROR);
+        assertEquals(putUser1Friend2Response.getBody().getMessage(), "Пользователи с ID: 1 и ID: 2 уже друзья");
+    }
+
     @Test
     public void deleteFriend_shouldReturnNotFound_whenUsersAreNotFriends() {
         restTemplate.postForLocation(url, user1);
@@ -405,4 +610,8 @@ public class UserControllerTests {
         assertEquals(deleteUser1Friend2Response.getBody().getMessage(),
                 "Пользователь с ID: 1 успешно отозвал запрос на добавление в друзья пользователю с ID: 2");
     }
-}
\ No newline at end of file
+
+    private Map<String, Number> getUserCacheStats() {
+        return (Map<String, Number>) restTemplate.getForObject(url.resolve("/metrics/caches"), Map.class).get("users");
+    }
+}